@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the rating with and without {@link AdmissionFilter} on Zipf traffic mixed with uniform
+ * noise. Besides the register throughput, the share of the true top 100 and top {@code capacity} keys
+ * found in the top of the filled rating is printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdmissionBenchmark {
+    private static final int SAMPLES_COUNT = 1 << 20;
+    private static final int TOP_COUNT = 100;
+
+    @Param({"1000", "10000"})
+    public int capacity;
+
+    @Param({"1000000"})
+    public int cardinality;
+
+    @Param({"SIMPLE", "SIMPLE_ADMISSION"})
+    public RatingImplementation implementation;
+
+    private OccurrencesRating<String> rating;
+    private String[] samples;
+    private int position;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rand = new Random(42);
+        int[] indexes = KeyDistribution.ZIPF_NOISE.generate(rand, cardinality, SAMPLES_COUNT);
+        samples = new String[SAMPLES_COUNT];
+        final Map<String, Integer> exact = new HashMap<>();
+        for (int i = 0; i < SAMPLES_COUNT; i++) {
+            samples[i] = String.valueOf(indexes[i]);
+            Integer count = exact.get(samples[i]);
+            exact.put(samples[i], count == null ? 1 : count + 1);
+        }
+        rating = implementation.create(capacity);
+        for (String sample : samples) {
+            rating.register(sample);
+        }
+        List<String> keys = new ArrayList<>(exact.keySet());
+        Collections.sort(keys, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return exact.get(o2) - exact.get(o1);
+            }
+        });
+        for (int count : new int[]{TOP_COUNT, capacity}) {
+            Set<String> found = new HashSet<>(rating.getTop(count));
+            found.retainAll(keys.subList(0, count));
+            System.out.printf("%n%s true top %d found: %d%%", implementation, count, found.size() * 100 / count);
+        }
+        System.out.println();
+    }
+
+    @Benchmark
+    public void register() {
+        position = (position + 1) & (SAMPLES_COUNT - 1);
+        rating.register(samples[position]);
+    }
+}
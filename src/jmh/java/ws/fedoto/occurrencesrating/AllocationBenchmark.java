@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures register of Zipf-distributed keys that are already rated and of keys that evict the bottom one of a full
+ * rating. Run with {@code -prof gc} to see the bytes allocated per registration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AllocationBenchmark {
+    private static final int CAPACITY = 1000;
+    private static final int SAMPLES_COUNT = 1 << 16;
+
+    @Param({"SIMPLE", "CONCURRENT"})
+    public RatingImplementation implementation;
+
+    private OccurrencesRating<String> rating;
+    private String[] known;
+    private String[] unknown;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rating = implementation.create(CAPACITY);
+        int[] indexes = KeyDistribution.ZIPF.generate(new Random(42), CAPACITY / 2, SAMPLES_COUNT);
+        known = new String[SAMPLES_COUNT];
+        for (int i = 0; i < SAMPLES_COUNT; i++) {
+            known[i] = String.valueOf(indexes[i]);
+            rating.register(known[i]);
+        }
+        unknown = new String[SAMPLES_COUNT];
+        for (int i = 0; i < SAMPLES_COUNT; i++) {
+            unknown[i] = "unknown" + i;
+        }
+    }
+
+    @Benchmark
+    public void registerKnown(OccurrencesRatingBenchmark.Cursor cursor) {
+        rating.register(known[cursor.next() & (SAMPLES_COUNT - 1)]);
+    }
+
+    /**
+     * Keys of the cycle are evicted long before they come again, as the cycle is much longer than the
+     * capacity.
+     */
+    @Benchmark
+    public void registerNew(OccurrencesRatingBenchmark.Cursor cursor) {
+        rating.register(unknown[cursor.next() & (SAMPLES_COUNT - 1)]);
+    }
+}
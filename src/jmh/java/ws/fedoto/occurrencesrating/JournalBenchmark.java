@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the register throughput of a {@link ConcurrentOccurrencesRating} without a journal and
+ * with a {@link JournalingOccurrencesRating} syncing once a second or after every 64 KB batch write.
+ * Run with {@code -t} to vary the number of writers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+    private static final int SAMPLES_COUNT = 1 << 20;
+    private static final int CAPACITY = 1000;
+    private static final int CARDINALITY = 10000;
+
+    @Param({"NONE", "SYNC_INTERVAL", "SYNC_EVERY_WRITE"})
+    public String journal;
+
+    private OccurrencesRating<String> rating;
+    private JournalingOccurrencesRating<String> journaling;
+    private Path directory;
+    private String[] samples;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random rand = new Random(42);
+        int[] indexes = KeyDistribution.ZIPF.generate(rand, CARDINALITY, SAMPLES_COUNT);
+        samples = new String[SAMPLES_COUNT];
+        for (int i = 0; i < SAMPLES_COUNT; i++) {
+            samples[i] = String.valueOf(indexes[i]);
+        }
+        rating = new ConcurrentOccurrencesRating<>(CAPACITY);
+        if (!journal.equals("NONE")) {
+            directory = Files.createTempDirectory("journal");
+            long syncBytes = journal.equals("SYNC_INTERVAL") ? Long.MAX_VALUE : 0;
+            journaling = new JournalingOccurrencesRating<>(rating, directory, new StringKeySerializer(16),
+                    64 << 20, syncBytes, 1, TimeUnit.SECONDS);
+            rating = journaling;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (journaling != null) {
+            journaling.close();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    Files.delete(path);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Benchmark
+    public void register(OccurrencesRatingBenchmark.Cursor cursor) {
+        rating.register(samples[cursor.next()]);
+    }
+}
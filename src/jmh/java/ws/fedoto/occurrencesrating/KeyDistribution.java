@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * How benchmark samples are spread over the key space.
+ */
+public enum KeyDistribution {
+    UNIFORM {
+        @Override
+        int[] generate(Random rand, int cardinality, int samplesCount) {
+            return sample(samplesCount, () -> rand.nextInt(cardinality));
+        }
+    },
+    ZIPF {
+        private static final double EXPONENT = 1.0;
+
+        @Override
+        int[] generate(Random rand, int cardinality, int samplesCount) {
+            double[] cumulative = new double[cardinality];
+            double sum = 0;
+            for (int i = 0; i < cardinality; i++) {
+                sum += 1.0 / Math.pow(i + 1, EXPONENT);
+                cumulative[i] = sum;
+            }
+            int[] samples = new int[samplesCount];
+            for (int i = 0; i < samplesCount; i++) {
+                int pos = Arrays.binarySearch(cumulative, rand.nextDouble() * sum);
+                samples[i] = Math.min(pos < 0 ? -pos - 1 : pos, cardinality - 1);
+            }
+            return samples;
+        }
+    },
+    /**
+     * 90% of samples hit 10% of keys.
+     */
+    HOTSET {
+        @Override
+        int[] generate(Random rand, int cardinality, int samplesCount) {
+            int hotKeys = Math.max(1, cardinality / 10);
+            return sample(samplesCount, () -> rand.nextInt(10) < 9 ? rand.nextInt(hotKeys) : rand.nextInt(cardinality));
+        }
+    },
+    /**
+     * Half of samples follow ZIPF over 10% of keys, the other half is uniform noise over the rest,
+     * mostly one-off keys when the cardinality is large.
+     */
+    ZIPF_NOISE {
+        @Override
+        int[] generate(Random rand, int cardinality, int samplesCount) {
+            int hotKeys = Math.max(1, cardinality / 10);
+            int[] samples = ZIPF.generate(rand, hotKeys, samplesCount);
+            for (int i = 0; i < samplesCount; i++) {
+                if (rand.nextBoolean() && cardinality > hotKeys) {
+                    samples[i] = hotKeys + rand.nextInt(cardinality - hotKeys);
+                }
+            }
+            return samples;
+        }
+    };
+
+    abstract int[] generate(Random rand, int cardinality, int samplesCount);
+
+    private static int[] sample(int samplesCount, IntSupplier next) {
+        int[] samples = new int[samplesCount];
+        for (int i = 0; i < samplesCount; i++) {
+            samples[i] = next.getAsInt();
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registers new keys into a full rating with a large capacity, so every call inserts a node and
+ * evicts the bottom one. The retained heap of the filled rating is printed during setup; run with
+ * {@code -prof gc} to see GC count and time of the on-heap and off-heap implementations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class LargeCapacityBenchmark {
+    @Param({"1000000", "5000000"})
+    public int capacity;
+
+    @Param({"SIMPLE", "CONCURRENT", "OFF_HEAP"})
+    public RatingImplementation implementation;
+
+    private OccurrencesRating<String> rating;
+    private int nextKey;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long before = usedHeap();
+        rating = implementation.create(capacity);
+        for (int i = 0; i < capacity; i++) {
+            rating.register(String.valueOf(i));
+        }
+        nextKey = capacity;
+        long after = usedHeap();
+        System.out.printf("%n%s retained heap: %d MB, %d bytes per entry%n", implementation,
+                (after - before) >> 20, (after - before) / capacity);
+    }
+
+    @Benchmark
+    public void register() {
+        rating.register(String.valueOf(nextKey++));
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
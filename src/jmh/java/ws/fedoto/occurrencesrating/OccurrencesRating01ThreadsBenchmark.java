@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ *
+ */
+@Threads(1)
+public class OccurrencesRating01ThreadsBenchmark extends OccurrencesRatingBenchmark {
+    @Param({"SIMPLE", "SIMPLE_METERED", "BUCKETED", "OFF_HEAP", "TOP_K", "SYNCHRONIZED", "STAMPED", "CONCURRENT", "CONCURRENT_METERED", "CONCURRENT_SNAPSHOT", "SKIP_LIST", "SHARDED", "STRIPED", "RING_BUFFER", "QUEUING"})
+    public RatingImplementation implementation;
+
+    @Override
+    protected RatingImplementation implementation() {
+        return implementation;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures register, getTop and getStatistics of every implementation. The thread count is fixed by
+ * the concrete subclasses, the rest of the matrix is driven by parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class OccurrencesRatingBenchmark {
+    private static final int SAMPLES_COUNT = 1 << 20;
+    private static final int TOP_COUNT = 20;
+
+    @Param({"1000", "100000"})
+    public int capacity;
+
+    @Param({"10000", "1000000"})
+    public int cardinality;
+
+    @Param({"UNIFORM", "ZIPF", "HOTSET"})
+    public KeyDistribution distribution;
+
+    protected OccurrencesRating<String> rating;
+    private String[] samples;
+
+    protected abstract RatingImplementation implementation();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rand = new Random(42);
+        String[] keys = new String[cardinality];
+        for (int i = 0; i < cardinality; i++) {
+            keys[i] = String.valueOf(rand.nextInt());
+        }
+        int[] indexes = distribution.generate(rand, cardinality, SAMPLES_COUNT);
+        samples = new String[SAMPLES_COUNT];
+        for (int i = 0; i < SAMPLES_COUNT; i++) {
+            samples[i] = keys[indexes[i]];
+        }
+        rating = implementation().create(capacity);
+        for (String sample : samples) {
+            rating.register(sample);
+        }
+        // waits until queued registrations are applied
+        rating.size();
+    }
+
+    /**
+     * Stops the threads of the queuing, ring buffer and striped implementations, so they do not
+     * compete with the following trials of the fork.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (rating instanceof AutoCloseable) {
+            ((AutoCloseable) rating).close();
+        }
+    }
+
+    @Benchmark
+    public void register(Cursor cursor) {
+        rating.register(samples[cursor.next()]);
+    }
+
+    @Benchmark
+    public List<String> getTop() {
+        return rating.getTop(TOP_COUNT);
+    }
+
+    @Benchmark
+    public Map<String, Integer> getStatistics() {
+        return rating.getStatistics(TOP_COUNT);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            position = ThreadLocalRandom.current().nextInt(SAMPLES_COUNT);
+        }
+
+        int next() {
+            position = (position + 1) & (SAMPLES_COUNT - 1);
+            return position;
+        }
+    }
+}
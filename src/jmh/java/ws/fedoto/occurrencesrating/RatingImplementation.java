@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ */
+public enum RatingImplementation {
+    SIMPLE {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new SimpleOccurrencesRating<>(capacity);
+        }
+    },
+    SIMPLE_METERED {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new MeteredOccurrencesRating<>(new SimpleOccurrencesRating<String>(capacity));
+        }
+    },
+    SIMPLE_ADMISSION {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new SimpleOccurrencesRating<>(capacity, new AdmissionFilter(capacity));
+        }
+    },
+    BUCKETED {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new BucketedOccurrencesRating<>(capacity);
+        }
+    },
+    OFF_HEAP {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new OffHeapOccurrencesRating<>(capacity, new StringKeySerializer(16));
+        }
+    },
+    TOP_K {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new TopKOccurrencesRating<>(capacity, 100);
+        }
+    },
+    SYNCHRONIZED {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new SynchronizedOccurrencesRating<>(new SimpleOccurrencesRating<String>(capacity));
+        }
+    },
+    STAMPED {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new StampedOccurrencesRating<>(new SimpleOccurrencesRating<String>(capacity));
+        }
+    },
+    CONCURRENT {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new ConcurrentOccurrencesRating<>(capacity);
+        }
+    },
+    CONCURRENT_METERED {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new MeteredOccurrencesRating<>(new ConcurrentOccurrencesRating<String>(capacity));
+        }
+    },
+    CONCURRENT_SNAPSHOT {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new ConcurrentOccurrencesRating<>(capacity, 100, 100, TimeUnit.MILLISECONDS);
+        }
+    },
+    SKIP_LIST {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new SkipListOccurrencesRating<>(capacity);
+        }
+    },
+    SHARDED {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new ShardedOccurrencesRating<>(capacity);
+        }
+    },
+    STRIPED {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new StripedOccurrencesRating<>(capacity, 100, TimeUnit.MILLISECONDS);
+        }
+    },
+    RING_BUFFER {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new RingBufferOccurrencesRating<>(capacity);
+        }
+    },
+    QUEUING {
+        @Override
+        OccurrencesRating<String> create(int capacity) {
+            return new QueuingOccurrencesRating<>(capacity);
+        }
+    };
+
+    abstract OccurrencesRating<String> create(int capacity);
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a read-heavy mix: nine threads read the top while one thread registers. Run with
+ * {@code -tg} to change the number of readers and writers.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadHeavyBenchmark {
+    private static final int SAMPLES_COUNT = 1 << 20;
+    private static final int CAPACITY = 1000;
+    private static final int CARDINALITY = 10000;
+    private static final int TOP_COUNT = 20;
+
+    @Param({"SYNCHRONIZED", "STAMPED", "CONCURRENT", "SHARDED"})
+    public RatingImplementation implementation;
+
+    private OccurrencesRating<String> rating;
+    private String[] samples;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rand = new Random(42);
+        int[] indexes = KeyDistribution.ZIPF.generate(rand, CARDINALITY, SAMPLES_COUNT);
+        samples = new String[SAMPLES_COUNT];
+        for (int i = 0; i < SAMPLES_COUNT; i++) {
+            samples[i] = String.valueOf(indexes[i]);
+        }
+        rating = implementation.create(CAPACITY);
+        for (String sample : samples) {
+            rating.register(sample);
+        }
+    }
+
+    @Benchmark
+    @Group("mix")
+    @GroupThreads(9)
+    public List<String> getTop() {
+        return rating.getTop(TOP_COUNT);
+    }
+
+    @Benchmark
+    @Group("mix")
+    @GroupThreads(1)
+    public void register(OccurrencesRatingBenchmark.Cursor cursor) {
+        rating.register(samples[cursor.next()]);
+    }
+}
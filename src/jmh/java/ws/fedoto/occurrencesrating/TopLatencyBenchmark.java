@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of reading the top of a full rating, which should not grow with the
+ * capacity since the traversal stops after the requested count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopLatencyBenchmark {
+    private static final int TOP_COUNT = 20;
+
+    @Param({"10000", "1000000"})
+    public int capacity;
+
+    @Param({"SIMPLE", "SYNCHRONIZED", "STAMPED", "CONCURRENT", "SKIP_LIST", "SHARDED"})
+    public RatingImplementation implementation;
+
+    private OccurrencesRating<String> rating;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rating = implementation.create(capacity);
+        for (int i = 0; i < capacity; i++) {
+            rating.register(String.valueOf(i));
+        }
+    }
+
+    @Benchmark
+    public List<String> getTop() {
+        return rating.getTop(TOP_COUNT);
+    }
+}
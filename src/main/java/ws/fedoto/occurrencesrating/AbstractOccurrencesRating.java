@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Implements single and batch registration on top of {@link #register(Object, int)}: duplicate keys
+ * of a batch are counted first and then every distinct key is applied with its count, in the order
+ * of first occurrence.
+ */
+public abstract class AbstractOccurrencesRating<K> implements OccurrencesRating<K> {
+    OccurrencesRatingMetrics metrics;
+    OccurrencesRatingMetrics.Recorder recorder;
+
+    @Override
+    public void register(K key) {
+        register(key, 1);
+    }
+
+    @Override
+    public void registerAll(Collection<? extends K> keys) {
+        registerAggregated(aggregate(keys));
+    }
+
+    @Override
+    public void registerAll(K[] keys, int offset, int length) {
+        registerAll(Arrays.asList(keys).subList(offset, offset + length));
+    }
+
+    /**
+     * Registers the weights of every key of the other rating, as if its occurrences had been
+     * registered here. Weights of capacity-limited ratings are approximate, see
+     * {@link OccurrencesSummary} for merging with error bounds.
+     */
+    public void merge(OccurrencesRating<? extends K> other) {
+        registerAggregated(new LinkedHashMap<K, Integer>(other.getStatistics(other.size())));
+    }
+
+    /**
+     * Enables recording of promotions, evictions and waits by implementations that have them, or
+     * disables it with {@code null}. Must be called before the rating is shared between threads,
+     * see {@link MeteredOccurrencesRating}.
+     */
+    public void setMetrics(OccurrencesRatingMetrics metrics) {
+        this.metrics = metrics;
+        this.recorder = metrics != null && isSingleWriter() ? metrics.newRecorder(this) : null;
+    }
+
+    /**
+     * @return true if the rating must not be updated concurrently, so that it and a decorator share
+     * {@link #recorder} instead of looking up the one of the current thread
+     */
+    boolean isSingleWriter() {
+        return false;
+    }
+
+    /**
+     * Applies pre-aggregated counts of a batch.
+     */
+    protected void registerAggregated(Map<K, Integer> counts) {
+        for (Map.Entry<K, Integer> entry : counts.entrySet()) {
+            register(entry.getKey(), entry.getValue());
+        }
+    }
+
+    static void checkDelta(int delta) throws IllegalArgumentException {
+        if (delta < 1) {
+            throw new IllegalArgumentException("Delta must be positive: " + delta);
+        }
+    }
+
+    static <K> Map<K, Integer> aggregate(Collection<? extends K> keys) {
+        Map<K, Integer> result = new LinkedHashMap<>(keys.size() * 2);
+        for (K key : keys) {
+            Integer count = result.get(key);
+            result.put(key, count == null ? 1 : count + 1);
+        }
+        return result;
+    }
+}
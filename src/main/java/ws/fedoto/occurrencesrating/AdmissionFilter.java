@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+/**
+ * TinyLFU admission policy: remembers approximate frequencies of recently registered keys, including
+ * the ones that are not in the rating, and admits a new key only if it occurred more often than the
+ * key it would evict. One-off keys, like scanner traffic, then stop pushing useful keys out of the
+ * rating.
+ * <p>
+ * Frequencies are kept in a {@link CountMinSketch} of {@code 4 x 8 * capacity} counters, that is
+ * halved every {@code 10 * capacity} registrations, so keys that were frequent long ago do not block
+ * newcomers forever. Not thread-safe.
+ */
+public class AdmissionFilter {
+    private static final int DEPTH = 4;
+    private static final int WIDTH_FACTOR = 8;
+    private static final int SAMPLE_FACTOR = 10;
+
+    private final CountMinSketch sketch;
+    private final long sampleSize;
+    private long registrations;
+
+    /**
+     * @param capacity capacity of the rating the filter stands in front of
+     */
+    public AdmissionFilter(int capacity) {
+        this.sketch = new CountMinSketch(capacity * WIDTH_FACTOR, DEPTH);
+        this.sampleSize = (long) capacity * SAMPLE_FACTOR;
+    }
+
+    public void record(Object key, int delta) {
+        sketch.add(key, delta);
+        registrations += delta;
+        if (registrations >= sampleSize) {
+            sketch.halve();
+            registrations /= 2;
+        }
+    }
+
+    /**
+     * @param candidate new key, already {@link #record recorded}
+     * @param victim key that would be evicted for the candidate
+     */
+    public boolean admit(Object candidate, Object victim) {
+        return sketch.estimate(candidate) > sketch.estimate(victim);
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Same ordering, insertion point and eviction rules as {@link SimpleOccurrencesRating}, but nodes of
+ * equal weight are grouped into buckets, so promotion moves a node to the head of the next bucket in
+ * constant time instead of walking over all nodes of the same weight.
+ */
+public class BucketedOccurrencesRating<K> extends AbstractOccurrencesRating<K> {
+    private final int capacity;
+    private final Map<K, Node<K>> index;
+    private Node<K> top;
+    private Node<K> bottom;
+    private Node<K> insertionPoint;
+
+    public BucketedOccurrencesRating(int capacity) {
+        this.capacity = capacity;
+        this.index = new HashMap<>(capacity * 2);
+    }
+
+    @Override
+    public void register(K key, int delta) throws IllegalArgumentException {
+        checkDelta(delta);
+        Node<K> node = index.get(key);
+        if (node == null) {
+            node = new Node<>(key);
+            add(node);
+            if (delta > 1) {
+                promote(node, delta - 1);
+            }
+        } else {
+            promote(node, delta);
+        }
+    }
+
+    @Override
+    public List<K> getTop(int count) {
+        int realCount = Math.min(count, index.size());
+        List<K> result = new ArrayList<>(realCount);
+        Node<K> current = top;
+        for (int i = 0; i < realCount; i++, current = current.next) {
+            result.add(current.key);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<K, Integer> getStatistics(int count) {
+        int realCount = Math.min(count, index.size());
+        Map<K, Integer> result = new LinkedHashMap<>(realCount * 2);
+        Node<K> current = top;
+        for (int i = 0; i < realCount; i++, current = current.next) {
+            result.put(current.key, current.bucket.weight);
+        }
+        return result;
+    }
+
+    @Override
+    boolean isSingleWriter() {
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    private void add(Node<K> item) {
+        index.put(item.key, item);
+        if (top == null) {
+            top = item;
+            bottom = item;
+            insertionPoint = item;
+            item.prev = null;
+            item.next = null;
+            item.bucket = new Bucket<>(1);
+            item.bucket.head = item;
+            item.bucket.size = 1;
+            return;
+        }
+        Bucket<K> bucket = insertionPoint.bucket;
+        insert(item, insertionPoint.prev, insertionPoint);
+        item.bucket = bucket;
+        bucket.size++;
+        if (bucket.head == insertionPoint) {
+            bucket.head = item;
+        }
+        insertionPoint = item;
+        if (index.size() > capacity) {
+            Node<K> last = bottom;
+            index.remove(last.key);
+            leave(last);
+            remove(last);
+            if (recorder != null) {
+                recorder.evicted();
+            }
+        }
+    }
+
+    private void promote(Node<K> item, int delta) {
+        if (item == insertionPoint && item.next != null) {
+            insertionPoint = item.next;
+        }
+        Bucket<K> bucket = item.bucket;
+        int weight = bucket.weight + delta;
+        Node<K> head = bucket.head;
+        Node<K> above = head.prev;
+        int steps = 0;
+        // skip whole buckets that are still lighter than the new weight
+        while (above != null && above.bucket.weight < weight) {
+            above = above.bucket.head.prev;
+            steps++;
+        }
+        if (recorder != null) {
+            recorder.promoted(steps);
+        }
+        if (above != null && above.bucket.weight == weight) {
+            Bucket<K> target = above.bucket;
+            leave(item);
+            remove(item);
+            insert(item, target.head.prev, target.head);
+            join(item, target);
+        } else if (above == head.prev && bucket.size == 1) {
+            bucket.weight = weight;
+        } else {
+            leave(item);
+            Node<K> newNext = above == null ? top : above.next;
+            if (item != newNext) {
+                remove(item);
+                insert(item, above, newNext);
+            }
+            join(item, new Bucket<K>(weight));
+        }
+    }
+
+    private void join(Node<K> item, Bucket<K> bucket) {
+        item.bucket = bucket;
+        bucket.head = item;
+        bucket.size++;
+    }
+
+    private void leave(Node<K> item) {
+        Bucket<K> bucket = item.bucket;
+        bucket.size--;
+        if (bucket.head == item) {
+            bucket.head = bucket.size == 0 ? null : item.next;
+        }
+    }
+
+    private void insert(Node<K> item, Node<K> newPrev, Node<K> newNext) {
+        item.prev = newPrev;
+        item.next = newNext;
+        if (newPrev == null) {
+            top = item;
+        } else {
+            newPrev.next = item;
+        }
+        if (newNext == null) {
+            bottom = item;
+        } else {
+            newNext.prev = item;
+        }
+    }
+
+    private void remove(Node<K> item) {
+        Node<K> oldPrev = item.prev;
+        Node<K> oldNext = item.next;
+        if (oldPrev == null) {
+            top = oldNext;
+        } else {
+            oldPrev.next = oldNext;
+        }
+        if (oldNext == null) {
+            bottom = oldPrev;
+        } else {
+            oldNext.prev = oldPrev;
+        }
+    }
+
+    static private class Bucket<K> {
+        private int weight;
+        private int size;
+        private Node<K> head;
+
+        public Bucket(int weight) {
+            this.weight = weight;
+        }
+
+        @Override
+        public String toString() {
+            return "Bucket{" +
+                    "weight=" + weight +
+                    ", size=" + size +
+                    '}';
+        }
+    }
+
+    static private class Node<K> {
+        private K key;
+        private Bucket<K> bucket;
+        private Node<K> next;
+        private Node<K> prev;
+
+        public Node(K key) {
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Node<?> node = (Node<?>) o;
+
+            return key.equals(node.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "Node{" +
+                    "key=" + key +
+                    ", weight=" + bucket.weight +
+                    '}';
+        }
+    }
+}
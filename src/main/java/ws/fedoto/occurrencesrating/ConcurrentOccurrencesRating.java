@@ -19,22 +19,27 @@
 
 package ws.fedoto.occurrencesrating;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  *
  */
-public class ConcurrentOccurrencesRating<K> implements OccurrencesRating<K> {
+public class ConcurrentOccurrencesRating<K> extends AbstractOccurrencesRating<K> implements SavableOccurrencesRating<K> {
     private final int capacity;
     private final ConcurrentHashMap<K, Node<K>> index;
     private final Node<K> topHolder = new Node<>(null);
@@ -42,104 +47,214 @@ public class ConcurrentOccurrencesRating<K> implements OccurrencesRating<K> {
     private final AtomicInteger size = new AtomicInteger();
     private final AtomicReference<Node<K>> insertionPointHolder = new AtomicReference<>(bottomHolder);
     private final ReadWriteLock globalLock = new ReentrantReadWriteLock();
+    private final int snapshotSize;
+    private final long snapshotInterval;
+    private final AtomicBoolean snapshotRefreshing = new AtomicBoolean();
+    private volatile Snapshot<K> snapshot;
+    private final boolean parking;
+    private final AtomicReferenceArray<Node<K>> pool =
+            new AtomicReferenceArray<>(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2);
 
     public ConcurrentOccurrencesRating(int capacity) {
+        this(capacity, 0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reads of up to {@code snapshotSize} entries, and {@code size()}, are served without locking
+     * from an immutable snapshot of the top entries. The first read after {@code snapshotInterval}
+     * takes a fresh snapshot under the global lock, so writers are blocked at most once per interval
+     * however many reads there are. Larger reads traverse the list under the global lock.
+     *
+     * @param snapshotSize number of top entries kept in the snapshot, 0 disables snapshots
+     */
+    public ConcurrentOccurrencesRating(int capacity, int snapshotSize, long snapshotInterval, TimeUnit unit) {
+        this(capacity, snapshotSize, snapshotInterval, unit, LockWait.PARK);
+    }
+
+    /**
+     * @param lockWait how writers wait for a node locked by another writer
+     */
+    public ConcurrentOccurrencesRating(int capacity, int snapshotSize, long snapshotInterval, TimeUnit unit, LockWait lockWait) {
         this.capacity = capacity;
+        this.parking = lockWait == LockWait.PARK;
         this.index = new ConcurrentHashMap<>(capacity * 2);
         this.topHolder.next = bottomHolder;
         this.bottomHolder.prev = topHolder;
         this.bottomHolder.weight = 1;
+        this.snapshotSize = snapshotSize;
+        this.snapshotInterval = unit.toNanos(snapshotInterval);
+        this.snapshot = new Snapshot<>(new Object[0], new int[0], 0, nanoTime() - this.snapshotInterval);
     }
 
     @Override
-    public void register(K key) {
+    public void register(K key, int delta) throws IllegalArgumentException {
+        checkDelta(delta);
         globalLock.readLock().lock();
         try {
             Node<K> node = index.get(key);
             if (node == null) {
-                node = new Node<>(key);
-                node.lock();
+                node = newNode(key);
+                Node<K> existsNode;
+                lock(node);
                 try {
-                    Node<K> existsNode = index.putIfAbsent(key, node);
-                    if (existsNode != null) {
-                        promote(existsNode);
-                    } else {
+                    existsNode = index.putIfAbsent(key, node);
+                    if (existsNode == null) {
                         add(node);
                     }
                 } finally {
                     node.unlock();
                 }
+                if (existsNode != null) {
+                    recycle(node);
+                    promote(existsNode, key, delta);
+                    return;
+                }
+                // evicts without holding the lock of the new node, which is already linked into the
+                // list, as promoting writers lock nodes from the bottom up
+                evictIfFull();
+                if (delta > 1) {
+                    promote(node, key, delta - 1);
+                }
             } else {
-                promote(node);
+                lookedUp(key);
+                promote(node, key, delta);
             }
         } finally {
             globalLock.readLock().unlock();
         }
     }
 
-    private boolean promote(Node<K> item) {
-        Node<K>[] locked = new Node[4];
+    /**
+     * Called between the lookup of an existing node and its promotion, for tests.
+     */
+    void lookedUp(K key) {
+    }
+
+    /**
+     * Moves the node up, locking it with its neighbours hand over hand: {@code n3} below it,
+     * {@code n1} above it and {@code n0} above {@code n1} while they are swapped. Fails if the node was
+     * evicted, and possibly reused for another key, since it was looked up.
+     */
+    private boolean promote(Node<K> item, K key, int delta) {
         while (true) {
             Node<K> next;
-            item.lock();
+            lock(item);
             try {
-                if (item.weight < 0) {
+                if (item.weight < 0 || !key.equals(item.key)) {
                     return false;
                 }
                 next = item.next;
             } finally {
                 item.unlock();
             }
+            Node<K> n0 = null;
+            Node<K> n1 = null;
+            Node<K> n2 = null;
+            Node<K> n3 = null;
             try {
-                next.lock();
-                locked[3] = next;
+                lock(next);
+                n3 = next;
                 if (next.prev != item) {
                     continue;
                 }
-                item.lock();
-                locked[2] = item;
-                item.weight++;
-                locked[2].prev.lock();
-                locked[1] = locked[2].prev;
-                while (locked[1] != topHolder && locked[2].compareTo(locked[1]) >= 0) {
-                    locked[1].prev.lock();
-                    locked[0] = locked[1].prev;
-                    if (locked[3] != bottomHolder && insertionPointHolder.get() == locked[2] && locked[2].compareTo(locked[3]) > 0) {
-                        insertionPointHolder.set(locked[3]);
+                lock(item);
+                n2 = item;
+                if (!key.equals(item.key)) {
+                    return false;
+                }
+                item.weight += delta;
+                lock(n2.prev);
+                n1 = n2.prev;
+                int steps = 0;
+                while (n1 != topHolder && n2.compareTo(n1) >= 0) {
+                    steps++;
+                    lock(n1.prev);
+                    n0 = n1.prev;
+                    if (n3 != bottomHolder && insertionPointHolder.get() == n2 && n2.compareTo(n3) > 0) {
+                        insertionPointHolder.set(n3);
                     }
-                    locked[2].next = locked[3].prev = locked[1];
-                    locked[1].prev = locked[2];
-                    locked[1].next = locked[3];
-                    locked[2].prev = locked[0];
-                    locked[0].next = locked[2];
-                    locked[2] = locked[1];
-                    locked[1] = locked[0].next;
-                    locked[3].unlock();
-                    System.arraycopy(locked, 0, locked, 1, 3);
-                    locked[0] = null;
+                    n2.next = n3.prev = n1;
+                    n1.prev = n2;
+                    n1.next = n3;
+                    n2.prev = n0;
+                    n0.next = n2;
+                    n3.unlock();
+                    n3 = n1;
+                    n1 = n0;
+                    n0 = null;
+                }
+                if (metrics != null) {
+                    metrics.recorder().promoted(steps);
                 }
                 return true;
             } finally {
-                for (int i = 0; i < 4; i++) {
-                    if (locked[i] != null) {
-                        locked[i].unlock();
-                        locked[i] = null;
-                    }
+                if (n0 != null) {
+                    n0.unlock();
+                }
+                if (n1 != null) {
+                    n1.unlock();
+                }
+                if (n2 != null) {
+                    n2.unlock();
+                }
+                if (n3 != null) {
+                    n3.unlock();
                 }
             }
         }
     }
 
+    /**
+     * Takes an evicted node, with its lock, from the pool slot of the current thread. Writers that
+     * still hold the node from an earlier lookup see its new key, or weight {@code -1} until it is
+     * linked, and give up.
+     */
+    private Node<K> newNode(K key) {
+        int slot = (int) Thread.currentThread().getId() & (pool.length() - 1);
+        Node<K> result = pool.get(slot);
+        if (result != null && pool.compareAndSet(slot, result, null)) {
+            result.key = key;
+            return result;
+        }
+        return new Node<>(key);
+    }
+
+    /**
+     * Puts an unlinked node into the pool slot of the current thread, unless the slot is taken.
+     */
+    private void recycle(Node<K> node) {
+        node.key = null;
+        node.weight = -1;
+        node.prev = null;
+        node.next = null;
+        int slot = (int) Thread.currentThread().getId() & (pool.length() - 1);
+        pool.compareAndSet(slot, null, node);
+    }
+
+    /**
+     * Times the wait only if the lock is held by another thread, an uncontended lock costs a tryLock.
+     */
+    private void lock(Node<K> node) {
+        OccurrencesRatingMetrics metrics = this.metrics;
+        if (metrics == null) {
+            node.lock(parking);
+        } else if (!node.tryLock()) {
+            long start = System.nanoTime();
+            node.lock(parking);
+            metrics.recorder().lockWaited(System.nanoTime() - start);
+        }
+    }
+
     private void add(Node<K> item) {
         while (true) {
             Node<K> ip = insertionPointHolder.get();
-            ip.lock();
+            lock(ip);
             try {
                 if (insertionPointHolder.get() != ip) {
                     continue;
                 }
                 Node<K> ipp = ip.prev;
-                ipp.lock();
+                lock(ipp);
                 try {
                     insertionPointHolder.set(item);
                     ip.prev.next = item;
@@ -156,14 +271,21 @@ public class ConcurrentOccurrencesRating<K> implements OccurrencesRating<K> {
             }
             break;
         }
+    }
+
+    private void evictIfFull() {
         if (size.get() > capacity) {
-            bottomHolder.lock();
+            lock(bottomHolder);
             Node<K> last = bottomHolder.prev;
-            last.lock();
+            lock(last);
             try {
                 if (size.get() > capacity) {
-                    last.prev.lock();
+                    lock(last.prev);
                     Node<K> preLast = last.prev;
+                    if (insertionPointHolder.get() == last) {
+                        // adders waiting for the lock of the evicted node see the change and retry
+                        insertionPointHolder.set(preLast == topHolder ? bottomHolder : preLast);
+                    }
                     last.prev = null;
                     last.next = null;
                     last.weight = -1;
@@ -171,8 +293,12 @@ public class ConcurrentOccurrencesRating<K> implements OccurrencesRating<K> {
                     preLast.next = bottomHolder;
                     index.remove(last.key);
                     last.unlock();
+                    recycle(last);
                     last = preLast;
                     size.decrementAndGet();
+                    if (metrics != null) {
+                        metrics.recorder().evicted();
+                    }
                 }
             } finally {
                 last.unlock();
@@ -182,12 +308,23 @@ public class ConcurrentOccurrencesRating<K> implements OccurrencesRating<K> {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public List<K> getTop(int count) {
+        if (count <= snapshotSize) {
+            Snapshot<K> current = currentSnapshot();
+            int realCount = Math.min(count, current.keys.length);
+            List<K> result = new ArrayList<>(realCount);
+            for (int i = 0; i < realCount; i++) {
+                result.add((K) current.keys[i]);
+            }
+            return result;
+        }
         globalLock.writeLock().lock();
         try {
             int realCount = Math.min(count, size.get());
             List<K> result = new ArrayList<>(realCount);
-            for (Node<K> current = topHolder.next; current != bottomHolder; current = current.next) {
+            Node<K> current = topHolder.next;
+            for (int i = 0; i < realCount; i++, current = current.next) {
                 result.add(current.key);
             }
             return result;
@@ -197,12 +334,23 @@ public class ConcurrentOccurrencesRating<K> implements OccurrencesRating<K> {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public Map<K, Integer> getStatistics(int count) {
+        if (count <= snapshotSize) {
+            Snapshot<K> current = currentSnapshot();
+            int realCount = Math.min(count, current.keys.length);
+            Map<K, Integer> result = new LinkedHashMap<>(realCount * 2);
+            for (int i = 0; i < realCount; i++) {
+                result.put((K) current.keys[i], current.weights[i]);
+            }
+            return result;
+        }
         globalLock.writeLock().lock();
         try {
             int realCount = Math.min(count, size.get());
             Map<K, Integer> result = new LinkedHashMap<>(realCount * 2);
-            for (Node<K> current = topHolder.next; current != bottomHolder; current = current.next) {
+            Node<K> current = topHolder.next;
+            for (int i = 0; i < realCount; i++, current = current.next) {
                 result.put(current.key, current.weight);
             }
             return result;
@@ -213,6 +361,9 @@ public class ConcurrentOccurrencesRating<K> implements OccurrencesRating<K> {
 
     @Override
     public int size() {
+        if (snapshotSize > 0) {
+            return currentSnapshot().size;
+        }
         globalLock.writeLock().lock();
         try {
             return size.get();
@@ -221,23 +372,209 @@ public class ConcurrentOccurrencesRating<K> implements OccurrencesRating<K> {
         }
     }
 
+    /**
+     * Writes keys, weights, order and insertion point to the file, see
+     * {@link SimpleOccurrencesRating#load}. Writers are blocked only while entries are copied, not
+     * during the file output.
+     *
+     * @throws IllegalArgumentException if a key does not fit into the serializer's maximal size
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void save(Path path, KeySerializer<K> serializer) throws IOException, IllegalArgumentException {
+        Object[] keys;
+        int[] weights;
+        int insertionPointIndex;
+        globalLock.writeLock().lock();
+        try {
+            int realCount = size.get();
+            keys = new Object[realCount];
+            weights = new int[realCount];
+            insertionPointIndex = realCount;
+            Node<K> current = topHolder.next;
+            for (int i = 0; i < realCount; i++, current = current.next) {
+                if (current == insertionPointHolder.get()) {
+                    insertionPointIndex = i;
+                }
+                keys[i] = current.key;
+                weights[i] = current.weight;
+            }
+        } finally {
+            globalLock.writeLock().unlock();
+        }
+        try (SnapshotFormat.Writer<K> writer = new SnapshotFormat.Writer<>(path, serializer, capacity, keys.length, insertionPointIndex)) {
+            for (int i = 0; i < keys.length; i++) {
+                writer.write((K) keys[i], weights[i]);
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * Restores a rating saved by {@link #save} or {@link SimpleOccurrencesRating#save} into this
+     * empty rating, without replaying registrations. Entries beyond the capacity of this rating are
+     * skipped, and an insertion point among them goes below the bottom entry. Writers are blocked
+     * until loading completes.
+     *
+     * @throws IllegalStateException if the rating is not empty
+     */
+    @Override
+    public void load(Path path, KeySerializer<K> serializer) throws IOException, IllegalStateException {
+        globalLock.writeLock().lock();
+        try (SnapshotFormat.Reader<K> reader = new SnapshotFormat.Reader<>(path, serializer)) {
+            if (size.get() > 0) {
+                throw new IllegalStateException("Rating is not empty");
+            }
+            int count = Math.min(reader.size(), capacity);
+            int insertionPointIndex = reader.insertionPoint();
+            Node<K> insertionPoint = bottomHolder;
+            try {
+                for (int i = 0; i < count; i++) {
+                    reader.next();
+                    Node<K> node = new Node<>(reader.key());
+                    node.weight = reader.weight();
+                    Node<K> last = bottomHolder.prev;
+                    if (last != topHolder && node.weight > last.weight) {
+                        throw new IOException("Corrupted snapshot: weights are not ordered");
+                    }
+                    index.put(node.key, node);
+                    node.prev = last;
+                    node.next = bottomHolder;
+                    last.next = node;
+                    bottomHolder.prev = node;
+                    if (i == insertionPointIndex) {
+                        insertionPoint = node;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                index.clear();
+                topHolder.next = bottomHolder;
+                bottomHolder.prev = topHolder;
+                throw e;
+            }
+            size.set(count);
+            insertionPointHolder.set(insertionPoint);
+            snapshot = new Snapshot<>(new Object[0], new int[0], 0, nanoTime() - snapshotInterval);
+        } finally {
+            globalLock.writeLock().unlock();
+        }
+    }
+
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private Snapshot<K> currentSnapshot() {
+        Snapshot<K> current = snapshot;
+        // a single reader refreshes a stale snapshot, the others keep serving the previous one
+        if (nanoTime() - current.time >= snapshotInterval && snapshotRefreshing.compareAndSet(false, true)) {
+            try {
+                current = takeSnapshot();
+                snapshot = current;
+            } finally {
+                snapshotRefreshing.set(false);
+            }
+        }
+        return current;
+    }
+
+    private Snapshot<K> takeSnapshot() {
+        globalLock.writeLock().lock();
+        try {
+            long time = nanoTime();
+            int realCount = Math.min(snapshotSize, size.get());
+            Object[] keys = new Object[realCount];
+            int[] weights = new int[realCount];
+            Node<K> current = topHolder.next;
+            for (int i = 0; i < realCount; i++, current = current.next) {
+                keys[i] = current.key;
+                weights[i] = current.weight;
+            }
+            return new Snapshot<>(keys, weights, size.get(), time);
+        } finally {
+            globalLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * How a writer waits for the lock of a node held by another writer. Either way it blocks on the
+     * global lock only while a snapshot or a large read traverses the list.
+     */
+    public enum LockWait {
+        /**
+         * Spins, yields, then parks for growing periods, so waiters do not burn the CPU of a holder
+         * that was preempted.
+         */
+        PARK,
+        /**
+         * Spins, then yields and retries until the lock is free, never parks. Node locks are held for a
+         * few pointer updates, so with many short-lived callers, e.g. virtual threads, a waiter that
+         * gives its carrier to the holder and retries gets the lock sooner than one parked for a period.
+         */
+        YIELD
+    }
+
+    static private class Snapshot<K> {
+        private final Object[] keys;
+        private final int[] weights;
+        private final int size;
+        private final long time;
+
+        private Snapshot(Object[] keys, int[] weights, int size, long time) {
+            this.keys = keys;
+            this.weights = weights;
+            this.size = size;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Locks are held for a few pointer updates, so a node is locked by a CAS of its state word: a
+     * waiter spins for a while, then yields, then parks for growing periods unless it only retries,
+     * see {@link LockWait}. The lock is not reentrant and not fair.
+     */
     static private class Node<K> implements Comparable<Node<K>> {
+        // the updater is keyed by the class literal, which is always raw
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Node> STATE = AtomicIntegerFieldUpdater.newUpdater(Node.class, "state");
+        private static final int SPINS = 64;
+        private static final int YIELDS = 8;
+        private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
         private K key;
         private int weight;
         private Node<K> next;
         private Node<K> prev;
-        private Lock lock = new ReentrantLock();
+        private volatile int state;
 
         public Node(K key) {
             this.key = key;
         }
 
-        public void lock() {
-            lock.lock();
+        public void lock(boolean parking) {
+            if (tryLock()) {
+                return;
+            }
+            long parkNanos = 1000;
+            for (int i = 0; !tryLock(); i++) {
+                if (i < SPINS) {
+                    continue;
+                }
+                if (i < SPINS + YIELDS || !parking) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(this, parkNanos);
+                    parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+                }
+            }
+        }
+
+        public boolean tryLock() {
+            return state == 0 && STATE.compareAndSet(this, 0, 1);
         }
 
         public void unlock() {
-            lock.unlock();
+            STATE.lazySet(this, 0);
         }
 
         @Override
@@ -250,7 +587,7 @@ public class ConcurrentOccurrencesRating<K> implements OccurrencesRating<K> {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
 
-            Node node = (Node) o;
+            Node<?> node = (Node<?>) o;
 
             return key.equals(node.key);
         }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+/**
+ * Count-Min sketch: estimates frequencies of any number of keys in fixed memory. An estimate is never
+ * below the true frequency and, with probability {@code 1 - 2^-depth}, exceeds it by at most
+ * {@code 2 * total / width}. Not thread-safe.
+ */
+public class CountMinSketch {
+    private final int depth;
+    private final int mask;
+    private final int[] counters;
+
+    /**
+     * @param width counters per row, rounded up to a power of two
+     * @param depth number of rows, i.e. independent hash functions
+     */
+    public CountMinSketch(int width, int depth) {
+        int realWidth = Integer.highestOneBit(Math.max(width, 1) * 2 - 1);
+        this.depth = depth;
+        this.mask = realWidth - 1;
+        this.counters = new int[realWidth * depth];
+    }
+
+    /**
+     * @return the estimate of the key after adding
+     */
+    public int add(Object key, int delta) {
+        int hash = spread(key.hashCode());
+        int result = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            int slot = slot(hash, i);
+            int value = counters[slot] = saturatedAdd(counters[slot], delta);
+            result = Math.min(result, value);
+        }
+        return result;
+    }
+
+    public int estimate(Object key) {
+        int hash = spread(key.hashCode());
+        int result = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            result = Math.min(result, counters[slot(hash, i)]);
+        }
+        return result;
+    }
+
+    /**
+     * Adds counters of the other sketch, so that this one estimates frequencies over both streams.
+     *
+     * @throws IllegalArgumentException if sketches have different dimensions
+     */
+    public void merge(CountMinSketch other) throws IllegalArgumentException {
+        if (!hasSameDimensions(other)) {
+            throw new IllegalArgumentException("Sketch dimensions differ");
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = saturatedAdd(counters[i], other.counters[i]);
+        }
+    }
+
+    public boolean hasSameDimensions(CountMinSketch other) {
+        return depth == other.depth && mask == other.mask;
+    }
+
+    /**
+     * Halves every counter, so that old occurrences weigh less than recent ones.
+     */
+    public void halve() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] >>>= 1;
+        }
+    }
+
+    private int slot(int hash, int row) {
+        int h = (hash + row * 0x9E3779B9) * 0x85EBCA6B;
+        h ^= h >>> 15;
+        return row * (mask + 1) + (h & mask);
+    }
+
+    private static int spread(int h) {
+        h *= 0xCC9E2D51;
+        return h ^ (h >>> 16);
+    }
+
+    private static int saturatedAdd(int value, int delta) {
+        int result = value + delta;
+        return result < value ? Integer.MAX_VALUE : result;
+    }
+}
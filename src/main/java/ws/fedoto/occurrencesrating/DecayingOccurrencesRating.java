@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SimpleOccurrencesRating} whose weights decay exponentially with the given half-life.
+ * <p>
+ * Instead of decaying every stored weight, each new occurrence is counted with a growing factor
+ * {@code 2^(t / halfLife)}, and the stored scores are divided by the current factor on read. As all
+ * scores are scaled alike, decay never changes the order of the list. When the factor gets too big,
+ * all scores are renormalized in a single pass, which happens once per {@value #RENORMALIZE_HALF_LIVES}
+ * half-lives.
+ */
+public class DecayingOccurrencesRating<K> extends AbstractOccurrencesRating<K> {
+    private static final int RENORMALIZE_HALF_LIVES = 64;
+
+    private final int capacity;
+    private final double halfLife;
+    private final Map<K, Node<K>> index;
+    private Node<K> top;
+    private Node<K> bottom;
+    private Node<K> insertionPoint;
+    private long epoch;
+
+    /**
+     * @throws IllegalArgumentException if the half-life is not positive
+     */
+    public DecayingOccurrencesRating(int capacity, long halfLife, TimeUnit unit)
+            throws IllegalArgumentException {
+        if (halfLife <= 0) {
+            throw new IllegalArgumentException("Half-life must be positive: " + halfLife);
+        }
+        this.capacity = capacity;
+        this.halfLife = unit.toNanos(halfLife);
+        this.index = new HashMap<>(capacity * 2);
+        this.epoch = nanoTime();
+    }
+
+    @Override
+    public void register(K key, int delta) throws IllegalArgumentException {
+        checkDelta(delta);
+        double scale = scale();
+        Node<K> node = index.get(key);
+        if (node == null) {
+            node = new Node<>(key);
+            add(node, scale);
+            if (delta > 1) {
+                promote(node, (delta - 1) * scale);
+            }
+        } else {
+            promote(node, delta * scale);
+        }
+    }
+
+    @Override
+    public List<K> getTop(int count) {
+        int realCount = Math.min(count, index.size());
+        List<K> result = new ArrayList<>(realCount);
+        Node<K> current = top;
+        for (int i = 0; i < realCount; i++, current = current.next) {
+            result.add(current.key);
+        }
+        return result;
+    }
+
+    /**
+     * Decayed weights are rounded to the nearest integer, see {@link #getScores(int)} for exact values.
+     */
+    @Override
+    public Map<K, Integer> getStatistics(int count) {
+        int realCount = Math.min(count, index.size());
+        Map<K, Integer> result = new LinkedHashMap<>(realCount * 2);
+        double scale = scale();
+        Node<K> current = top;
+        for (int i = 0; i < realCount; i++, current = current.next) {
+            result.put(current.key, (int) Math.round(current.score / scale));
+        }
+        return result;
+    }
+
+    public Map<K, Double> getScores(int count) {
+        int realCount = Math.min(count, index.size());
+        Map<K, Double> result = new LinkedHashMap<>(realCount * 2);
+        double scale = scale();
+        Node<K> current = top;
+        for (int i = 0; i < realCount; i++, current = current.next) {
+            result.put(current.key, current.score / scale);
+        }
+        return result;
+    }
+
+    @Override
+    boolean isSingleWriter() {
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private double scale() {
+        double halfLives = (nanoTime() - epoch) / halfLife;
+        if (halfLives >= RENORMALIZE_HALF_LIVES) {
+            renormalize();
+            halfLives = 0;
+        }
+        return Math.pow(2, halfLives);
+    }
+
+    private void renormalize() {
+        long now = nanoTime();
+        double scale = Math.pow(2, (now - epoch) / halfLife);
+        for (Node<K> current = top; current != null; current = current.next) {
+            current.score /= scale;
+        }
+        epoch = now;
+    }
+
+    private void add(Node<K> item, double increment) {
+        index.put(item.key, item);
+        if (top == null) {
+            top = item;
+            bottom = item;
+            insertionPoint = item;
+            item.prev = null;
+            item.next = null;
+            item.score = increment;
+            return;
+        }
+        insert(item, insertionPoint.prev, insertionPoint);
+        item.score = insertionPoint.score;
+        insertionPoint = item;
+        if (index.size() > capacity) {
+            index.remove(bottom.key);
+            remove(bottom);
+        }
+        // the insertion point may have decayed below a single fresh occurrence
+        if (increment > item.score) {
+            promote(item, increment - item.score);
+        }
+    }
+
+    private void promote(Node<K> item, double increment) {
+        if (item == insertionPoint && item.next != null) {
+            insertionPoint = item.next;
+        }
+        item.score += increment;
+        Node<K> newPrev = item.prev;
+        while (newPrev != null && item.score >= newPrev.score) {
+            newPrev = newPrev.prev;
+        }
+        if (newPrev == item.prev) {
+            return;
+        }
+        remove(item);
+        Node<K> newNext;
+        if (newPrev == null) {
+            newNext = top;
+        } else {
+            newNext = newPrev.next;
+        }
+        insert(item, newPrev, newNext);
+    }
+
+    private void insert(Node<K> item, Node<K> newPrev, Node<K> newNext) {
+        item.prev = newPrev;
+        item.next = newNext;
+        if (newPrev == null) {
+            top = item;
+        } else {
+            newPrev.next = item;
+        }
+        if (newNext == null) {
+            bottom = item;
+        } else {
+            newNext.prev = item;
+        }
+    }
+
+    private void remove(Node<K> item) {
+        Node<K> oldPrev = item.prev;
+        Node<K> oldNext = item.next;
+        if (oldPrev == null) {
+            top = oldNext;
+        } else {
+            oldPrev.next = oldNext;
+        }
+        if (oldNext == null) {
+            bottom = oldPrev;
+        } else {
+            oldNext.prev = oldPrev;
+        }
+    }
+
+    static private class Node<K> {
+        private K key;
+        private double score;
+        private Node<K> next;
+        private Node<K> prev;
+
+        public Node(K key) {
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Node<?> node = (Node<?>) o;
+
+            return key.equals(node.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "Node{" +
+                    "key=" + key +
+                    ", score=" + score +
+                    '}';
+        }
+    }
+}
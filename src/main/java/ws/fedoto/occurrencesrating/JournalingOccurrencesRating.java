@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decorator that appends every registration to a write-ahead log in a directory before applying it
+ * to the wrapped rating, and recovers the wrapped rating from that directory when created.
+ * <p>
+ * The log is split into segments of about {@code segmentSize} bytes. Records of all writers are
+ * collected in a buffer and written to the segment in batches; the segment is synced to the disk
+ * when {@code syncBytes} bytes were written since the last sync or, by a background thread, every
+ * {@code syncInterval}. Registrations made after the last sync may be lost in a crash.
+ * <p>
+ * If the wrapped rating is a {@link SavableOccurrencesRating}, {@link #checkpoint()} saves it next to
+ * the log and deletes the segments it covers, so recovery loads the last snapshot and replays only
+ * the tail of the log. Otherwise the whole log is kept and replayed.
+ * <p>
+ * The decorator is as thread-safe as the wrapped rating. Journal I/O failures are thrown as
+ * {@link IllegalStateException}, and every registration fails after the first one.
+ */
+public class JournalingOccurrencesRating<K> extends AbstractOccurrencesRating<K> implements Closeable {
+    private static final long DEFAULT_SEGMENT_SIZE = 64 << 20;
+    private static final long DEFAULT_SYNC_BYTES = 1 << 20;
+    private static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+    private static final int BUFFER_SIZE = 64 << 10;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.bin");
+
+    private final OccurrencesRating<K> wrapped;
+    private final Path directory;
+    private final KeySerializer<K> serializer;
+    private final long segmentSize;
+    private final long syncBytes;
+    private final Lock journalLock = new ReentrantLock();
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final ByteBuffer buffer;
+    private final ScheduledExecutorService syncer;
+    private FileChannel segment;
+    private long segmentNumber;
+    private long segmentPosition;
+    private long unsyncedBytes;
+    private IOException failure;
+
+    public JournalingOccurrencesRating(OccurrencesRating<K> wrapped, Path directory, KeySerializer<K> serializer) throws IOException {
+        this(wrapped, directory, serializer, DEFAULT_SEGMENT_SIZE, DEFAULT_SYNC_BYTES, DEFAULT_SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Recovers the empty wrapped rating from the directory and starts a new log segment.
+     *
+     * @param syncBytes    written bytes that trigger a sync, 0 to sync after every batch write
+     * @param syncInterval maximal time between syncs, 0 disables the background sync
+     */
+    public JournalingOccurrencesRating(OccurrencesRating<K> wrapped, Path directory, KeySerializer<K> serializer,
+                                       long segmentSize, long syncBytes, long syncInterval, TimeUnit unit) throws IOException {
+        if (segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must not exceed 2 GB: " + segmentSize);
+        }
+        this.wrapped = wrapped;
+        this.directory = directory;
+        this.serializer = serializer;
+        this.segmentSize = segmentSize;
+        this.syncBytes = syncBytes;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, RECORD_HEADER_SIZE + serializer.maxSize()));
+        Files.createDirectories(directory);
+        this.segmentNumber = recover();
+        this.segment = openSegment(segmentNumber);
+        if (syncInterval > 0) {
+            syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread result = new Thread(r, "journal-sync");
+                    result.setDaemon(true);
+                    return result;
+                }
+            });
+            syncer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    journalLock.lock();
+                    try {
+                        if (failure == null && segment.isOpen()) {
+                            sync();
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                    } finally {
+                        journalLock.unlock();
+                    }
+                }
+            }, syncInterval, syncInterval, unit);
+        } else {
+            syncer = null;
+        }
+    }
+
+    @Override
+    public void register(K key, int delta) throws IllegalArgumentException, IllegalStateException {
+        checkDelta(delta);
+        checkpointLock.readLock().lock();
+        try {
+            journalLock.lock();
+            try {
+                append(key, delta);
+            } finally {
+                journalLock.unlock();
+            }
+            wrapped.register(key, delta);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends the whole batch under a single lock acquisition.
+     */
+    @Override
+    protected void registerAggregated(Map<K, Integer> counts) throws IllegalStateException {
+        checkpointLock.readLock().lock();
+        try {
+            journalLock.lock();
+            try {
+                for (Map.Entry<K, Integer> e : counts.entrySet()) {
+                    append(e.getKey(), e.getValue());
+                }
+            } finally {
+                journalLock.unlock();
+            }
+            for (Map.Entry<K, Integer> e : counts.entrySet()) {
+                wrapped.register(e.getKey(), e.getValue());
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<K> getTop(int count) {
+        return wrapped.getTop(count);
+    }
+
+    @Override
+    public Map<K, Integer> getStatistics(int count) {
+        return wrapped.getStatistics(count);
+    }
+
+    @Override
+    public int size() {
+        return wrapped.size();
+    }
+
+    /**
+     * Saves the wrapped rating and deletes the log segments it covers. Registrations are blocked
+     * until the snapshot is written.
+     *
+     * @throws UnsupportedOperationException if the wrapped rating is not a {@link SavableOccurrencesRating}
+     */
+    public void checkpoint() throws IOException, UnsupportedOperationException {
+        if (!(wrapped instanceof SavableOccurrencesRating)) {
+            throw new UnsupportedOperationException("Wrapped rating cannot be saved: " + wrapped.getClass().getName());
+        }
+        checkpointLock.writeLock().lock();
+        try {
+            journalLock.lock();
+            try {
+                checkFailure();
+                sync();
+                segment.close();
+                segmentNumber++;
+                ((SavableOccurrencesRating<K>) wrapped).save(directory.resolve(snapshotName(segmentNumber)), serializer);
+                segment = openSegment(segmentNumber);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            } finally {
+                journalLock.unlock();
+            }
+            for (Path path : list(SEGMENT_NAME)) {
+                if (number(path, SEGMENT_NAME) < segmentNumber) {
+                    Files.delete(path);
+                }
+            }
+            for (Path path : list(SNAPSHOT_NAME)) {
+                if (number(path, SNAPSHOT_NAME) < segmentNumber) {
+                    Files.delete(path);
+                }
+            }
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes and syncs buffered records and closes the log. The wrapped rating stays usable.
+     */
+    @Override
+    public void close() throws IOException {
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+        journalLock.lock();
+        try {
+            if (segment.isOpen()) {
+                try {
+                    sync();
+                } finally {
+                    segment.close();
+                }
+            }
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    private void append(K key, int delta) throws IllegalArgumentException, IllegalStateException {
+        checkFailure();
+        try {
+            if (buffer.remaining() < RECORD_HEADER_SIZE + serializer.maxSize()) {
+                write();
+            }
+        } catch (IOException e) {
+            failure = e;
+            checkFailure();
+        }
+        int start = buffer.position();
+        buffer.position(start + RECORD_HEADER_SIZE);
+        try {
+            serializer.write(key, buffer);
+        } catch (RuntimeException e) {
+            buffer.position(start);
+            throw e;
+        }
+        buffer.putInt(start, buffer.position() - start - RECORD_HEADER_SIZE).putInt(start + 4, delta);
+    }
+
+    private void checkFailure() throws IllegalStateException {
+        if (failure != null) {
+            throw new IllegalStateException("Journal has failed", failure);
+        }
+    }
+
+    /**
+     * Writes the buffer to the current segment, syncs it if enough bytes are unsynced and starts a
+     * new segment when the current one is full.
+     */
+    private void write() throws IOException {
+        int written = buffer.position();
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+        buffer.clear();
+        segmentPosition += written;
+        unsyncedBytes += written;
+        if (unsyncedBytes >= syncBytes) {
+            segment.force(false);
+            unsyncedBytes = 0;
+        }
+        if (segmentPosition >= segmentSize) {
+            segment.force(false);
+            unsyncedBytes = 0;
+            segment.close();
+            segment = openSegment(++segmentNumber);
+        }
+    }
+
+    private void sync() throws IOException {
+        if (buffer.position() > 0) {
+            write();
+        }
+        if (unsyncedBytes > 0) {
+            segment.force(false);
+            unsyncedBytes = 0;
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        segmentPosition = 0;
+        unsyncedBytes = 0;
+        return FileChannel.open(directory.resolve(String.format("segment-%019d.log", number)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Loads the last snapshot and replays the segments after it into the wrapped rating.
+     *
+     * @return number of the segment to write next
+     */
+    private long recover() throws IOException {
+        long first = 0;
+        List<Path> snapshots = list(SNAPSHOT_NAME);
+        if (!snapshots.isEmpty()) {
+            Path last = snapshots.get(snapshots.size() - 1);
+            if (!(wrapped instanceof SavableOccurrencesRating)) {
+                throw new IOException("Wrapped rating cannot load snapshot " + last);
+            }
+            ((SavableOccurrencesRating<K>) wrapped).load(last, serializer);
+            first = number(last, SNAPSHOT_NAME);
+        }
+        long next = first;
+        List<Path> segments = list(SEGMENT_NAME);
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            long number = number(path, SEGMENT_NAME);
+            if (number >= first) {
+                replay(path, i == segments.size() - 1);
+                next = number + 1;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Applies every complete record of the segment. A crash may leave a torn or zero-filled tail in
+     * the last segment, so there an invalid or incomplete record ends the log and is cut off, as the
+     * next segment would make it look like corruption at the next recovery. In earlier segments,
+     * which were synced and closed, it is corruption.
+     */
+    private void replay(Path path, boolean last) throws IOException {
+        long end;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (true) {
+                end = mapped.position();
+                if (!mapped.hasRemaining()) {
+                    return;
+                }
+                if (mapped.remaining() < RECORD_HEADER_SIZE) {
+                    break;
+                }
+                int keySize = mapped.getInt();
+                int delta = mapped.getInt();
+                if (keySize < 0 || keySize > serializer.maxSize() || delta < 1 || mapped.remaining() < keySize) {
+                    break;
+                }
+                ByteBuffer keyBytes = mapped.duplicate();
+                keyBytes.limit(keyBytes.position() + keySize);
+                mapped.position(mapped.position() + keySize);
+                wrapped.register(serializer.read(keyBytes), delta);
+            }
+        }
+        if (!last) {
+            throw new IOException("Corrupted journal segment " + path + " at " + end);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(end);
+            channel.force(false);
+        }
+    }
+
+    private List<Path> list(Pattern pattern) throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if (pattern.matcher(path.getFileName().toString()).matches()) {
+                    result.add(path);
+                }
+            }
+        }
+        // numbers are zero-padded, so names sort in the numeric order
+        Collections.sort(result);
+        return result;
+    }
+
+    private static long number(Path path, Pattern pattern) {
+        Matcher matcher = pattern.matcher(path.getFileName().toString());
+        matcher.matches();
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private static String snapshotName(long number) {
+        return String.format("snapshot-%019d.bin", number);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts keys to bytes for implementations that do not keep key objects on the heap.
+ */
+public interface KeySerializer<K> {
+    /**
+     * @return maximal number of bytes {@link #write} may produce for a single key
+     */
+    public int maxSize();
+
+    /**
+     * Writes the key at the current position of the buffer.
+     *
+     * @throws IllegalArgumentException if the key does not fit into {@link #maxSize()} bytes
+     */
+    public void write(K key, ByteBuffer buffer) throws IllegalArgumentException;
+
+    /**
+     * Reads a key from all remaining bytes of the buffer.
+     */
+    public K read(ByteBuffer buffer);
+}
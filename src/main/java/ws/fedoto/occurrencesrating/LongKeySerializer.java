@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.nio.ByteBuffer;
+
+/**
+ *
+ */
+public class LongKeySerializer implements KeySerializer<Long> {
+    @Override
+    public int maxSize() {
+        return 8;
+    }
+
+    @Override
+    public void write(Long key, ByteBuffer buffer) {
+        buffer.putLong(key);
+    }
+
+    @Override
+    public Long read(ByteBuffer buffer) {
+        return buffer.getLong();
+    }
+}
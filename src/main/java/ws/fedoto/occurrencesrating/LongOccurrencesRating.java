@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.util.Arrays;
+
+/**
+ * {@link SimpleOccurrencesRating} for primitive {@code long} keys. Nodes are slots in parallel
+ * primitive arrays and the index is an open-addressing hash table of slot numbers, so registering a
+ * key neither boxes it nor allocates anything.
+ */
+public class LongOccurrencesRating {
+    private static final int NONE = -1;
+
+    private final int capacity;
+    private final long[] keys;
+    private final int[] weights;
+    private final int[] next;
+    private final int[] prev;
+    private final int[] table;
+    private final int mask;
+    private int size;
+    private int top = NONE;
+    private int bottom = NONE;
+    private int insertionPoint = NONE;
+    private int free;
+
+    /**
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public LongOccurrencesRating(int capacity) throws IllegalArgumentException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        // one spare slot: a new key is linked in before the bottom one is evicted
+        int slots = capacity + 1;
+        this.keys = new long[slots];
+        this.weights = new int[slots];
+        this.next = new int[slots];
+        this.prev = new int[slots];
+        for (int i = 0; i < slots; i++) {
+            next[i] = i + 1 < slots ? i + 1 : NONE;
+        }
+        this.free = 0;
+        this.table = new int[Integer.highestOneBit(slots * 2 - 1) << 1];
+        this.mask = table.length - 1;
+        Arrays.fill(table, NONE);
+    }
+
+    public void register(long key) {
+        register(key, 1);
+    }
+
+    /**
+     * Registers {@code delta} occurrences of the key at once.
+     *
+     * @throws IllegalArgumentException if delta is not positive
+     */
+    public void register(long key, int delta) throws IllegalArgumentException {
+        AbstractOccurrencesRating.checkDelta(delta);
+        int node = find(key);
+        if (node == NONE) {
+            node = add(key);
+            if (delta > 1) {
+                promote(node, delta - 1);
+            }
+        } else {
+            promote(node, delta);
+        }
+    }
+
+    /**
+     * Copies up to {@code count} top keys into {@code result}.
+     *
+     * @return number of copied keys
+     */
+    public int getTop(int count, long[] result) {
+        int realCount = Math.min(Math.min(count, size), result.length);
+        int current = top;
+        for (int i = 0; i < realCount; i++, current = next[current]) {
+            result[i] = keys[current];
+        }
+        return realCount;
+    }
+
+    /**
+     * Copies up to {@code count} top keys and their weights into {@code resultKeys} and
+     * {@code resultWeights}.
+     *
+     * @return number of copied entries
+     */
+    public int getStatistics(int count, long[] resultKeys, int[] resultWeights) {
+        int realCount = Math.min(Math.min(count, size), Math.min(resultKeys.length, resultWeights.length));
+        int current = top;
+        for (int i = 0; i < realCount; i++, current = next[current]) {
+            resultKeys[i] = keys[current];
+            resultWeights[i] = weights[current];
+        }
+        return realCount;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(long key) {
+        int item = free;
+        free = next[item];
+        keys[item] = key;
+        index(item);
+        size++;
+        if (top == NONE) {
+            top = item;
+            bottom = item;
+            insertionPoint = item;
+            prev[item] = NONE;
+            next[item] = NONE;
+            weights[item] = 1;
+            return item;
+        }
+        insert(item, prev[insertionPoint], insertionPoint);
+        weights[item] = weights[insertionPoint];
+        insertionPoint = item;
+        if (size > capacity) {
+            int last = bottom;
+            unindex(last);
+            remove(last);
+            size--;
+            next[last] = free;
+            free = last;
+        }
+        return item;
+    }
+
+    private void promote(int item, int delta) {
+        if (item == insertionPoint && next[item] != NONE) {
+            insertionPoint = next[item];
+        }
+        int weight = weights[item] += delta;
+        int newPrev = prev[item];
+        while (newPrev != NONE && weight >= weights[newPrev]) {
+            newPrev = prev[newPrev];
+        }
+        if (newPrev == prev[item]) {
+            return;
+        }
+        remove(item);
+        int newNext;
+        if (newPrev == NONE) {
+            newNext = top;
+        } else {
+            newNext = next[newPrev];
+        }
+        insert(item, newPrev, newNext);
+    }
+
+    private void insert(int item, int newPrev, int newNext) {
+        prev[item] = newPrev;
+        next[item] = newNext;
+        if (newPrev == NONE) {
+            top = item;
+        } else {
+            next[newPrev] = item;
+        }
+        if (newNext == NONE) {
+            bottom = item;
+        } else {
+            prev[newNext] = item;
+        }
+    }
+
+    private void remove(int item) {
+        int oldPrev = prev[item];
+        int oldNext = next[item];
+        if (oldPrev == NONE) {
+            top = oldNext;
+        } else {
+            next[oldPrev] = oldNext;
+        }
+        if (oldNext == NONE) {
+            bottom = oldPrev;
+        } else {
+            prev[oldNext] = oldPrev;
+        }
+    }
+
+    private int find(long key) {
+        for (int i = hash(key); ; i = (i + 1) & mask) {
+            int node = table[i];
+            if (node == NONE || keys[node] == key) {
+                return node;
+            }
+        }
+    }
+
+    private void index(int item) {
+        int i = hash(keys[item]);
+        while (table[i] != NONE) {
+            i = (i + 1) & mask;
+        }
+        table[i] = item;
+    }
+
+    private void unindex(int item) {
+        int i = hash(keys[item]);
+        while (table[i] != item) {
+            i = (i + 1) & mask;
+        }
+        // backward shift deletion keeps probe chains unbroken without tombstones
+        table[i] = NONE;
+        for (int j = (i + 1) & mask; table[j] != NONE; j = (j + 1) & mask) {
+            int home = hash(keys[table[j]]);
+            boolean reachable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+            if (reachable) {
+                table[i] = table[j];
+                table[j] = NONE;
+                i = j;
+            }
+        }
+    }
+
+    private int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
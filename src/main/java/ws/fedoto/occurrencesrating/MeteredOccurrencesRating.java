@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts registrations and reads of the wrapped rating. If the wrapped rating is an
+ * {@link AbstractOccurrencesRating}, it also records its promotions, evictions and waits into the
+ * same metrics. Register the metrics in JMX with {@link OccurrencesRatingMetrics#registerMBean}.
+ * <p>
+ * A rating that is not thread-safe is never called concurrently through the decorator either, so
+ * then the decorator shares the counters of the rating instead of looking up the ones of the
+ * calling thread.
+ */
+public class MeteredOccurrencesRating<K> implements OccurrencesRating<K> {
+    private final OccurrencesRating<K> wrapped;
+    private final OccurrencesRatingMetrics metrics;
+    private final OccurrencesRatingMetrics.Recorder recorder;
+
+    public MeteredOccurrencesRating(OccurrencesRating<K> wrapped) {
+        this(wrapped, new OccurrencesRatingMetrics());
+    }
+
+    public MeteredOccurrencesRating(OccurrencesRating<K> wrapped,
+                                    OccurrencesRatingMetrics metrics) {
+        this.wrapped = wrapped;
+        this.metrics = metrics;
+        if (wrapped instanceof AbstractOccurrencesRating) {
+            AbstractOccurrencesRating<K> rating = (AbstractOccurrencesRating<K>) wrapped;
+            rating.setMetrics(metrics);
+            this.recorder = rating.recorder;
+        } else {
+            this.recorder = null;
+        }
+    }
+
+    public OccurrencesRatingMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void register(K key) {
+        recorder().registered(1);
+        wrapped.register(key);
+    }
+
+    @Override
+    public void register(K key, int delta) throws IllegalArgumentException {
+        recorder().registered(1);
+        wrapped.register(key, delta);
+    }
+
+    @Override
+    public void registerAll(Collection<? extends K> keys) {
+        recorder().registered(keys.size());
+        wrapped.registerAll(keys);
+    }
+
+    @Override
+    public void registerAll(K[] keys, int offset, int length) {
+        recorder().registered(length);
+        wrapped.registerAll(keys, offset, length);
+    }
+
+    @Override
+    public List<K> getTop(int count) {
+        recorder().read();
+        return wrapped.getTop(count);
+    }
+
+    @Override
+    public Map<K, Integer> getStatistics(int count) {
+        recorder().read();
+        return wrapped.getStatistics(count);
+    }
+
+    @Override
+    public int size() {
+        return wrapped.size();
+    }
+
+    private OccurrencesRatingMetrics.Recorder recorder() {
+        return recorder == null ? metrics.recorder() : recorder;
+    }
+}
@@ -19,6 +19,7 @@
 
 package ws.fedoto.occurrencesrating;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -28,6 +29,26 @@ import java.util.Map;
 public interface OccurrencesRating<K> {
     public void register(K key);
 
+    /**
+     * Registers {@code delta} occurrences of the key at once, with the same result as calling
+     * {@link #register(Object)} {@code delta} times.
+     *
+     * @throws IllegalArgumentException if delta is not positive
+     */
+    public void register(K key, int delta) throws IllegalArgumentException;
+
+    /**
+     * Registers a batch of keys. Duplicate keys are counted once per batch, so the result may differ
+     * from registering the keys one by one in ties.
+     */
+    public void registerAll(Collection<? extends K> keys);
+
+    /**
+     * Registers {@code length} keys of the array starting at {@code offset}, see
+     * {@link #registerAll(Collection)}.
+     */
+    public void registerAll(K[] keys, int offset, int length);
+
     public List<K> getTop(int count);
 
     public Map<K, Integer> getStatistics(int count);
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counters of what happens inside a rating, see {@link MeteredOccurrencesRating} and
+ * {@link AbstractOccurrencesRating#setMetrics}. Every thread, or every single-writer rating,
+ * records into its own counters with plain writes, reading sums all of them and may miss the latest
+ * updates. Waits are timed only when a lock or a semaphore is not available at once. Recorders hold
+ * their threads and ratings weakly, counters of terminated threads and collected ratings are folded
+ * into common totals and the recorders dropped.
+ */
+public final class OccurrencesRatingMetrics implements OccurrencesRatingMetricsMBean {
+    public static final String DOMAIN = "ws.fedoto.occurrencesrating";
+
+    private static final int REGISTRATIONS = 0;
+    private static final int READS = 1;
+    private static final int PROMOTE_STEPS = 2;
+    private static final int EVICTIONS = 3;
+    private static final int LOCK_WAITS = 4;
+    private static final int LOCK_WAIT_NANOS = 5;
+    private static final int QUEUED = 6;
+    private static final int DEQUEUED = 7;
+    private static final int SEMAPHORE_WAITS = 8;
+    private static final int SEMAPHORE_WAIT_NANOS = 9;
+    private static final int HISTOGRAM = 10;
+    private static final int HISTOGRAM_SIZE = 16;
+    private static final int COUNTERS = 32;
+    private static final int MIN_PRUNE_THRESHOLD = 64;
+    /**
+     * Guards itself, {@link #folded} and {@link #pruneThreshold}.
+     */
+    private final List<Recorder> recorders = new ArrayList<>();
+    private final long[] folded = new long[COUNTERS];
+    private int pruneThreshold = MIN_PRUNE_THRESHOLD;
+    private final ThreadLocal<Recorder> threadRecorder = new ThreadLocal<Recorder>() {
+        @Override
+        protected Recorder initialValue() {
+            return add(new Recorder(Thread.currentThread()));
+        }
+    };
+
+    /**
+     * Registers the metrics in the platform MBean server as
+     * {@code ws.fedoto.occurrencesrating:type=OccurrencesRating,name=<name>}.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        String quoted = ObjectName.quote(name);
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=OccurrencesRating,name=" + quoted);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * @return recorder of the current thread
+     */
+    Recorder recorder() {
+        return threadRecorder.get();
+    }
+
+    /**
+     * @param owner a single writer, e.g. a rating that is never updated concurrently; its recorder
+     *              saves a thread local lookup per record, and is dropped once the owner is gone
+     */
+    Recorder newRecorder(Object owner) {
+        return add(new Recorder(owner));
+    }
+
+    private Recorder add(Recorder recorder) {
+        synchronized (recorders) {
+            // amortized, so recorders of short-lived threads do not pile up if metrics are not read
+            if (recorders.size() >= pruneThreshold) {
+                prune();
+                pruneThreshold = Math.max(recorders.size() * 2, MIN_PRUNE_THRESHOLD);
+            }
+            recorders.add(recorder);
+        }
+        return recorder;
+    }
+
+    int recordersCount() {
+        synchronized (recorders) {
+            return recorders.size();
+        }
+    }
+
+    /**
+     * Folds counters of recorders whose owners are gone and drops them, must hold the lock.
+     */
+    private void prune() {
+        int live = 0;
+        for (int i = 0; i < recorders.size(); i++) {
+            Recorder recorder = recorders.get(i);
+            if (recorder.isOwnerAlive()) {
+                recorders.set(live++, recorder);
+            } else {
+                for (int counter = 0; counter < COUNTERS; counter++) {
+                    folded[counter] += recorder.counters[counter];
+                }
+            }
+        }
+        recorders.subList(live, recorders.size()).clear();
+    }
+
+    @Override
+    public long getRegistrations() {
+        return sum(REGISTRATIONS);
+    }
+
+    @Override
+    public long getReads() {
+        return sum(READS);
+    }
+
+    @Override
+    public long getPromotions() {
+        long result = 0;
+        for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+            result += sum(HISTOGRAM + i);
+        }
+        return result;
+    }
+
+    @Override
+    public long getPromoteSteps() {
+        return sum(PROMOTE_STEPS);
+    }
+
+    @Override
+    public long[] getPromoteStepsHistogram() {
+        long[] result = new long[HISTOGRAM_SIZE];
+        for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+            result[i] = sum(HISTOGRAM + i);
+        }
+        return result;
+    }
+
+    @Override
+    public long getEvictions() {
+        return sum(EVICTIONS);
+    }
+
+    @Override
+    public long getLockWaits() {
+        return sum(LOCK_WAITS);
+    }
+
+    @Override
+    public long getLockWaitNanos() {
+        return sum(LOCK_WAIT_NANOS);
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return sum(QUEUED) - sum(DEQUEUED);
+    }
+
+    @Override
+    public long getSemaphoreWaits() {
+        return sum(SEMAPHORE_WAITS);
+    }
+
+    @Override
+    public long getSemaphoreWaitNanos() {
+        return sum(SEMAPHORE_WAIT_NANOS);
+    }
+
+    private long sum(int counter) {
+        synchronized (recorders) {
+            prune();
+            long result = folded[counter];
+            for (Recorder recorder : recorders) {
+                result += recorder.counters[counter];
+            }
+            return result;
+        }
+    }
+
+    static final class Recorder {
+        private final WeakReference<Object> owner;
+        /**
+         * Padded so that counters of different recorders do not share a cache line.
+         */
+        private final long[] counters = new long[COUNTERS];
+
+        private Recorder(Object owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        /**
+         * A terminated thread has made its last writes visible to the caller, see
+         * {@link Thread#isAlive()}.
+         */
+        private boolean isOwnerAlive() {
+            Object result = owner.get();
+            return result != null && (!(result instanceof Thread) || ((Thread) result).isAlive());
+        }
+
+        void registered(int keys) {
+            counters[REGISTRATIONS] += keys;
+        }
+
+        void read() {
+            counters[READS]++;
+        }
+
+        void promoted(int steps) {
+            if (steps == 0) {
+                counters[HISTOGRAM]++;
+                return;
+            }
+            counters[PROMOTE_STEPS] += steps;
+            int bucket = 32 - Integer.numberOfLeadingZeros(steps);
+            counters[HISTOGRAM + Math.min(bucket, HISTOGRAM_SIZE - 1)]++;
+        }
+
+        void evicted() {
+            counters[EVICTIONS]++;
+        }
+
+        void lockWaited(long nanos) {
+            counters[LOCK_WAITS]++;
+            counters[LOCK_WAIT_NANOS] += nanos;
+        }
+
+        void queued() {
+            counters[QUEUED]++;
+        }
+
+        void dequeued() {
+            counters[DEQUEUED]++;
+        }
+
+        void semaphoreWaited(long nanos) {
+            counters[SEMAPHORE_WAITS]++;
+            counters[SEMAPHORE_WAIT_NANOS] += nanos;
+        }
+    }
+}
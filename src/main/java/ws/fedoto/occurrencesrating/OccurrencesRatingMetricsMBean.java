@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+/**
+ * Management interface of {@link OccurrencesRatingMetrics}. Counters only grow since the metrics were
+ * created, monitoring tools derive rates from their deltas.
+ */
+public interface OccurrencesRatingMetricsMBean {
+    /**
+     * @return keys passed to register methods, a batch counts each of its keys
+     */
+    public long getRegistrations();
+
+    /**
+     * @return calls of {@code getTop} and {@code getStatistics}
+     */
+    public long getReads();
+
+    /**
+     * @return promotions of existing keys
+     */
+    public long getPromotions();
+
+    /**
+     * @return nodes or buckets passed by all promotions
+     */
+    public long getPromoteSteps();
+
+    /**
+     * @return number of promotions by steps: element 0 counts promotions of no steps, element
+     * {@code i} counts promotions of {@code 2^(i-1)} to {@code 2^i - 1} steps
+     */
+    public long[] getPromoteStepsHistogram();
+
+    public long getEvictions();
+
+    /**
+     * @return lock acquisitions that had to wait for another thread
+     */
+    public long getLockWaits();
+
+    public long getLockWaitNanos();
+
+    /**
+     * @return tasks submitted to a queue and not completed yet
+     */
+    public long getQueueDepth();
+
+    /**
+     * @return submissions that had to wait for a free queue slot
+     */
+    public long getSemaphoreWaits();
+
+    public long getSemaphoreWaitNanos();
+}
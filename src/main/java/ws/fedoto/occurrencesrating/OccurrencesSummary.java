@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact immutable summary of a {@link SpaceSavingOccurrencesRating}: keys with their weights and
+ * errors, the total number of occurrences and the bound, that is the maximum number of occurrences
+ * of any key out of the summary. Summaries of ratings on different nodes can be shipped to an
+ * aggregator and merged in any order or tree shape into a cluster-wide summary.
+ * <p>
+ * Merging adds weights and errors of every key; a key missing from one side is assumed to have
+ * occurred there as many times as that side's bound, which also goes to its error. Only the
+ * {@code capacity} heaviest keys are kept and the bound of the result is the sum of both bounds or
+ * the weight of the heaviest dropped key, whichever is greater. So, as for a single rating, every key
+ * of a summary occurred at least {@code weight - error} and at most {@code weight} times, every error
+ * is not above the bound, and every key that occurred more than {@link #getBound()} times is in the
+ * summary. The bound of a single rating is at most {@code total / capacity}.
+ */
+public final class OccurrencesSummary<K> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+    private final long total;
+    private final int bound;
+    private final Object[] keys;
+    private final int[] weights;
+    private final int[] errors;
+
+    /**
+     * Arrays are sorted by weight descending and are not copied.
+     */
+    OccurrencesSummary(int capacity, long total, int bound, Object[] keys, int[] weights, int[] errors) {
+        this.capacity = capacity;
+        this.total = total;
+        this.bound = bound;
+        this.keys = keys;
+        this.weights = weights;
+        this.errors = errors;
+    }
+
+    /**
+     * Merges two summaries into a new one with the smaller capacity of both.
+     */
+    public OccurrencesSummary<K> merge(OccurrencesSummary<K> other) {
+        Map<Object, Candidate> merged = new LinkedHashMap<>((keys.length + other.keys.length) * 2);
+        for (int i = 0; i < keys.length; i++) {
+            merged.put(keys[i], new Candidate(keys[i], weights[i] + other.bound, errors[i] + other.bound));
+        }
+        for (int i = 0; i < other.keys.length; i++) {
+            Candidate candidate = merged.get(other.keys[i]);
+            if (candidate == null) {
+                merged.put(other.keys[i], new Candidate(other.keys[i], other.weights[i] + bound, other.errors[i] + bound));
+            } else {
+                candidate.weight += other.weights[i] - other.bound;
+                candidate.error += other.errors[i] - other.bound;
+            }
+        }
+        List<Candidate> candidates = new ArrayList<>(merged.values());
+        Collections.sort(candidates, Candidate.WEIGHT_DESCENDING);
+        int newCapacity = Math.min(capacity, other.capacity);
+        int newSize = Math.min(newCapacity, candidates.size());
+        int newBound = bound + other.bound;
+        if (newSize < candidates.size()) {
+            newBound = Math.max(newBound, candidates.get(newSize).weight);
+        }
+        Object[] newKeys = new Object[newSize];
+        int[] newWeights = new int[newSize];
+        int[] newErrors = new int[newSize];
+        for (int i = 0; i < newSize; i++) {
+            Candidate candidate = candidates.get(i);
+            newKeys[i] = candidate.key;
+            newWeights[i] = candidate.weight;
+            newErrors[i] = candidate.error;
+        }
+        return new OccurrencesSummary<>(newCapacity, total + other.total, newBound, newKeys, newWeights, newErrors);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<K> getTop(int count) {
+        int realCount = Math.min(count, keys.length);
+        return (List<K>) Arrays.asList(Arrays.copyOf(keys, realCount));
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<K, Integer> getStatistics(int count) {
+        int realCount = Math.min(count, keys.length);
+        Map<K, Integer> result = new LinkedHashMap<>(realCount * 2);
+        for (int i = 0; i < realCount; i++) {
+            result.put((K) keys[i], weights[i]);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<K, SpaceSavingOccurrencesRating.Estimate> getEstimates(int count) {
+        int realCount = Math.min(count, keys.length);
+        Map<K, SpaceSavingOccurrencesRating.Estimate> result = new LinkedHashMap<>(realCount * 2);
+        for (int i = 0; i < realCount; i++) {
+            result.put((K) keys[i], new SpaceSavingOccurrencesRating.Estimate(weights[i], errors[i]));
+        }
+        return result;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return total number of occurrences of all summarized ratings
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return maximum number of occurrences of any key out of the summary
+     */
+    public int getBound() {
+        return bound;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    K key(int index) {
+        return (K) keys[index];
+    }
+
+    int weight(int index) {
+        return weights[index];
+    }
+
+    int error(int index) {
+        return errors[index];
+    }
+
+    @Override
+    public String toString() {
+        return "OccurrencesSummary{" +
+                "capacity=" + capacity +
+                ", total=" + total +
+                ", bound=" + bound +
+                ", size=" + keys.length +
+                '}';
+    }
+
+    static private class Candidate {
+        private static final Comparator<Candidate> WEIGHT_DESCENDING = new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate o1, Candidate o2) {
+                return Integer.compare(o2.weight, o1.weight);
+            }
+        };
+
+        private final Object key;
+        private int weight;
+        private int error;
+
+        public Candidate(Object key, int weight, int error) {
+            this.key = key;
+            this.weight = weight;
+            this.error = error;
+        }
+    }
+}
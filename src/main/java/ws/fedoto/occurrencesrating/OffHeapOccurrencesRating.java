@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link SimpleOccurrencesRating} that keeps its index, nodes and serialized keys in direct buffers,
+ * so a rating with tens of millions of entries adds almost nothing to the Java heap. Keys are
+ * converted with a {@link KeySerializer} and compared in their serialized form. Every store is split
+ * into buffers of up to 1 GB, so it is not limited by the 2 GB size of a single buffer. Like
+ * {@link SimpleOccurrencesRating} this class is not thread-safe.
+ */
+public class OffHeapOccurrencesRating<K> extends AbstractOccurrencesRating<K> {
+    private static final int NONE = -1;
+    private static final int WEIGHT = 0;
+    private static final int NEXT = 4;
+    private static final int PREV = 8;
+    private static final int HASH = 12;
+    private static final int KEY_SIZE = 16;
+    private static final int NODE_SIZE = 20;
+    private static final int MAX_BUFFER_SIZE = 1 << 30;
+
+    private final int capacity;
+    private final KeySerializer<K> serializer;
+    private final int keyStride;
+    private final Records nodes;
+    private final Records keys;
+    private final Records table;
+    private final ByteBuffer scratch;
+    private final int mask;
+    private int size;
+    private int top = NONE;
+    private int bottom = NONE;
+    private int insertionPoint = NONE;
+    private int free;
+
+    /**
+     * @throws IllegalArgumentException if the capacity is 2^29 or more
+     */
+    public OffHeapOccurrencesRating(int capacity, KeySerializer<K> serializer) throws IllegalArgumentException {
+        this(capacity, serializer, MAX_BUFFER_SIZE);
+    }
+
+    OffHeapOccurrencesRating(int capacity, KeySerializer<K> serializer, int maxBufferSize) throws IllegalArgumentException {
+        if (capacity >= 1 << 29) {
+            throw new IllegalArgumentException("Capacity is too big for the index: " + capacity);
+        }
+        this.capacity = capacity;
+        this.serializer = serializer;
+        this.keyStride = Math.max(serializer.maxSize(), 1);
+        // one spare slot: a new key is linked in before the bottom one is evicted
+        int slots = capacity + 1;
+        int tableSize = Integer.highestOneBit(slots * 2 - 1) << 1;
+        this.nodes = new Records(slots, NODE_SIZE, maxBufferSize);
+        this.keys = new Records(slots, keyStride, maxBufferSize);
+        this.table = new Records(tableSize, 4, maxBufferSize);
+        this.scratch = ByteBuffer.allocate(keyStride);
+        this.mask = tableSize - 1;
+        for (int i = 0; i < slots; i++) {
+            setNext(i, i + 1 < slots ? i + 1 : NONE);
+        }
+        for (int i = 0; i < tableSize; i++) {
+            table.putInt(i, 0, NONE);
+        }
+    }
+
+    @Override
+    public void register(K key, int delta) throws IllegalArgumentException {
+        checkDelta(delta);
+        int hash = hash(key);
+        serialize(key);
+        int node = find(hash);
+        if (node == NONE) {
+            node = add(hash);
+            if (delta > 1) {
+                promote(node, delta - 1);
+            }
+        } else {
+            promote(node, delta);
+        }
+    }
+
+    @Override
+    public List<K> getTop(int count) {
+        int realCount = Math.min(count, size);
+        List<K> result = new ArrayList<>(realCount);
+        int current = top;
+        for (int i = 0; i < realCount; i++, current = next(current)) {
+            result.add(key(current));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<K, Integer> getStatistics(int count) {
+        int realCount = Math.min(count, size);
+        Map<K, Integer> result = new LinkedHashMap<>(realCount * 2);
+        int current = top;
+        for (int i = 0; i < realCount; i++, current = next(current)) {
+            result.put(key(current), weight(current));
+        }
+        return result;
+    }
+
+    @Override
+    boolean isSingleWriter() {
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int add(int hash) {
+        int item = free;
+        free = next(item);
+        int keySize = scratch.position();
+        for (int i = 0; i < keySize; i++) {
+            keys.put(item, i, scratch.get(i));
+        }
+        nodes.putInt(item, KEY_SIZE, keySize);
+        nodes.putInt(item, HASH, hash);
+        index(item);
+        size++;
+        if (top == NONE) {
+            top = item;
+            bottom = item;
+            insertionPoint = item;
+            setPrev(item, NONE);
+            setNext(item, NONE);
+            setWeight(item, 1);
+            return item;
+        }
+        insert(item, prev(insertionPoint), insertionPoint);
+        setWeight(item, weight(insertionPoint));
+        insertionPoint = item;
+        if (size > capacity) {
+            int last = bottom;
+            unindex(last);
+            remove(last);
+            size--;
+            setNext(last, free);
+            free = last;
+        }
+        return item;
+    }
+
+    private void promote(int item, int delta) {
+        if (item == insertionPoint && next(item) != NONE) {
+            insertionPoint = next(item);
+        }
+        int weight = weight(item) + delta;
+        setWeight(item, weight);
+        int newPrev = prev(item);
+        while (newPrev != NONE && weight >= weight(newPrev)) {
+            newPrev = prev(newPrev);
+        }
+        if (newPrev == prev(item)) {
+            return;
+        }
+        remove(item);
+        int newNext;
+        if (newPrev == NONE) {
+            newNext = top;
+        } else {
+            newNext = next(newPrev);
+        }
+        insert(item, newPrev, newNext);
+    }
+
+    private void insert(int item, int newPrev, int newNext) {
+        setPrev(item, newPrev);
+        setNext(item, newNext);
+        if (newPrev == NONE) {
+            top = item;
+        } else {
+            setNext(newPrev, item);
+        }
+        if (newNext == NONE) {
+            bottom = item;
+        } else {
+            setPrev(newNext, item);
+        }
+    }
+
+    private void remove(int item) {
+        int oldPrev = prev(item);
+        int oldNext = next(item);
+        if (oldPrev == NONE) {
+            top = oldNext;
+        } else {
+            setNext(oldPrev, oldNext);
+        }
+        if (oldNext == NONE) {
+            bottom = oldPrev;
+        } else {
+            setPrev(oldNext, oldPrev);
+        }
+    }
+
+    private void serialize(K key) {
+        scratch.clear();
+        serializer.write(key, scratch);
+    }
+
+    /**
+     * Looks for the key currently serialized into the scratch buffer.
+     */
+    private int find(int hash) {
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int node = table.getInt(i, 0);
+            if (node == NONE || nodes.getInt(node, HASH) == hash && keyEquals(node)) {
+                return node;
+            }
+        }
+    }
+
+    private boolean keyEquals(int node) {
+        int keySize = scratch.position();
+        if (nodes.getInt(node, KEY_SIZE) != keySize) {
+            return false;
+        }
+        for (int i = 0; i < keySize; i++) {
+            if (keys.get(node, i) != scratch.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void index(int item) {
+        int i = nodes.getInt(item, HASH) & mask;
+        while (table.getInt(i, 0) != NONE) {
+            i = (i + 1) & mask;
+        }
+        table.putInt(i, 0, item);
+    }
+
+    private void unindex(int item) {
+        int i = nodes.getInt(item, HASH) & mask;
+        while (table.getInt(i, 0) != item) {
+            i = (i + 1) & mask;
+        }
+        // backward shift deletion keeps probe chains unbroken without tombstones
+        table.putInt(i, 0, NONE);
+        for (int j = (i + 1) & mask; table.getInt(j, 0) != NONE; j = (j + 1) & mask) {
+            int node = table.getInt(j, 0);
+            int home = nodes.getInt(node, HASH) & mask;
+            boolean reachable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+            if (reachable) {
+                table.putInt(i, 0, node);
+                table.putInt(j, 0, NONE);
+                i = j;
+            }
+        }
+    }
+
+    private K key(int node) {
+        return serializer.read(keys.slice(node, nodes.getInt(node, KEY_SIZE)));
+    }
+
+    private int weight(int node) {
+        return nodes.getInt(node, WEIGHT);
+    }
+
+    private void setWeight(int node, int weight) {
+        nodes.putInt(node, WEIGHT, weight);
+    }
+
+    private int next(int node) {
+        return nodes.getInt(node, NEXT);
+    }
+
+    private void setNext(int node, int next) {
+        nodes.putInt(node, NEXT, next);
+    }
+
+    private int prev(int node) {
+        return nodes.getInt(node, PREV);
+    }
+
+    private void setPrev(int node, int prev) {
+        nodes.putInt(node, PREV, prev);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Fixed-size records in direct buffers holding a power of two records each, a record never
+     * crosses buffers.
+     */
+    static private class Records {
+        private final ByteBuffer[] buffers;
+        private final int stride;
+        private final int shift;
+        private final int mask;
+
+        private Records(int count, int stride, int maxBufferSize) {
+            int perBuffer = Integer.highestOneBit(Math.max(maxBufferSize / stride, 1));
+            this.stride = stride;
+            this.shift = Integer.numberOfTrailingZeros(perBuffer);
+            this.mask = perBuffer - 1;
+            this.buffers = new ByteBuffer[(int) (((long) count + perBuffer - 1) >>> shift)];
+            for (int i = 0; i < buffers.length; i++) {
+                int records = Math.min(perBuffer, count - (i << shift));
+                buffers[i] = ByteBuffer.allocateDirect(records * stride).order(ByteOrder.nativeOrder());
+            }
+        }
+
+        private int getInt(int record, int field) {
+            return buffers[record >>> shift].getInt((record & mask) * stride + field);
+        }
+
+        private void putInt(int record, int field, int value) {
+            buffers[record >>> shift].putInt((record & mask) * stride + field, value);
+        }
+
+        private byte get(int record, int index) {
+            return buffers[record >>> shift].get((record & mask) * stride + index);
+        }
+
+        private void put(int record, int index, byte value) {
+            buffers[record >>> shift].put((record & mask) * stride + index, value);
+        }
+
+        private ByteBuffer slice(int record, int length) {
+            ByteBuffer result = buffers[record >>> shift].duplicate();
+            int offset = (record & mask) * stride;
+            result.limit(offset + length);
+            result.position(offset);
+            return result.slice();
+        }
+    }
+}
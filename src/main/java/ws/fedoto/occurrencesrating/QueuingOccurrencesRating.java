@@ -19,19 +19,31 @@
 
 package ws.fedoto.occurrencesrating;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.io.Closeable;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- *
+ * Applies registrations and reads one by one in a single thread. Reads are queued behind the writes
+ * submitted before them, so a thread reads its own writes. Consecutive queued reads are answered by a
+ * single traversal of the rating: the first of them copies as many entries as the largest pending
+ * read needs and the following ones take their part of the copy while no write is applied.
+ * <p>
+ * {@link #close()} stops the thread of the rating, which rejects registrations and reads afterwards.
  */
-public class QueuingOccurrencesRating<K> implements OccurrencesRating<K> {
+public class QueuingOccurrencesRating<K> extends AbstractOccurrencesRating<K> implements Closeable {
     private final ExecutorService executor = Executors.newSingleThreadExecutor(
             new ThreadFactory() {
                 @Override
@@ -42,8 +54,14 @@ public class QueuingOccurrencesRating<K> implements OccurrencesRating<K> {
                     return result;
                 }
             });
-    private final OccurrencesRating<K> instance;
+    private final SimpleOccurrencesRating<K> instance;
     private final Semaphore semaphore;
+    private final AtomicInteger pendingReadCount = new AtomicInteger();
+    // accessed by the executor thread only
+    private long appliedWrites;
+    private long copiedWrites = -1;
+    private Map<K, Integer> copy;
+    private int copiedSize;
 
     public QueuingOccurrencesRating(int capacity) {
         this.instance = new SimpleOccurrencesRating<>(capacity);
@@ -52,104 +70,274 @@ public class QueuingOccurrencesRating<K> implements OccurrencesRating<K> {
     }
 
     @Override
-    public void register(K key) {
+    public void register(K key, int delta) throws IllegalArgumentException {
+        checkDelta(delta);
         try {
-            semaphore.acquire();
-            executor.submit(new RegisterWorker(key));
+            RegisterWorker worker = new RegisterWorker(key, delta);
+            acquire(worker.metrics);
+            executor.submit(worker);
         } catch (InterruptedException e) {
             throw new IllegalStateException(e);
         }
     }
 
+    /**
+     * The whole batch is applied by a single queued task.
+     */
     @Override
-    public List<K> getTop(int count) throws IllegalStateException {
+    protected void registerAggregated(Map<K, Integer> counts) {
         try {
-            semaphore.acquire();
-            return executor.submit(new GetTopWorker(count)).get();
-        } catch (InterruptedException | ExecutionException e) {
+            RegisterAllWorker worker = new RegisterAllWorker(counts);
+            acquire(worker.metrics);
+            executor.submit(worker);
+        } catch (InterruptedException e) {
             throw new IllegalStateException(e);
         }
     }
 
     @Override
-    public Map<K, Integer> getStatistics(int count) {
+    public List<K> getTop(int count) throws IllegalStateException {
+        return get(getTopAsync(count));
+    }
+
+    @Override
+    public Map<K, Integer> getStatistics(int count) throws IllegalStateException {
+        return get(getStatisticsAsync(count));
+    }
+
+    @Override
+    public int size() throws IllegalStateException {
+        return get(sizeAsync());
+    }
+
+    /**
+     * Same as {@link #getTop}, but does not block the calling thread. Reads do not wait for a queue
+     * slot, and dependent actions that are not async run in the rating's thread, so they should be
+     * short.
+     */
+    public CompletableFuture<List<K>> getTopAsync(int count) {
+        return read(new GetTopWorker(count));
+    }
+
+    /**
+     * Same as {@link #getStatistics}, but does not block the calling thread, see {@link #getTopAsync}.
+     */
+    public CompletableFuture<Map<K, Integer>> getStatisticsAsync(int count) {
+        return read(new GetStatisticWorker(count));
+    }
+
+    /**
+     * Same as {@link #size}, but does not block the calling thread, see {@link #getTopAsync}.
+     */
+    public CompletableFuture<Integer> sizeAsync() {
+        return read(new GetSizeWorker());
+    }
+
+    /**
+     * Also records promotions and evictions of the queued rating.
+     */
+    @Override
+    public void setMetrics(OccurrencesRatingMetrics metrics) {
+        super.setMetrics(metrics);
+        instance.setMetrics(metrics);
+    }
+
+    /**
+     * Applies the queued registrations and reads and stops the thread of the rating.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> read(ReadWorker<T> worker) {
+        pendingReadCount.accumulateAndGet(worker.count, Math::max);
+        if (worker.metrics != null) {
+            worker.metrics.recorder().queued();
+        }
+        executor.execute(worker);
+        return worker.result;
+    }
+
+    private static <T> T get(Future<T> future) throws IllegalStateException {
         try {
-            semaphore.acquire();
-            return executor.submit(new GetStatisticWorker(count)).get();
+            return future.get();
         } catch (InterruptedException | ExecutionException e) {
             throw new IllegalStateException(e);
         }
     }
 
-    @Override
-    public int size() {
-        try {
+    private void acquire(OccurrencesRatingMetrics metrics) throws InterruptedException {
+        if (metrics == null) {
             semaphore.acquire();
-            return executor.submit(new GetSizeWorker()).get();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new IllegalStateException(e);
+            return;
+        }
+        if (!semaphore.tryAcquire()) {
+            long start = System.nanoTime();
+            semaphore.acquire();
+            metrics.recorder().semaphoreWaited(System.nanoTime() - start);
+        }
+        metrics.recorder().queued();
+    }
+
+    private void release(OccurrencesRatingMetrics metrics) {
+        semaphore.release();
+        dequeued(metrics);
+    }
+
+    private static void dequeued(OccurrencesRatingMetrics metrics) {
+        if (metrics != null) {
+            metrics.recorder().dequeued();
         }
     }
 
-    private class RegisterWorker implements Runnable {
+    /**
+     * Copies at least {@code count} top entries, unless the copy made after the last write already
+     * has them.
+     */
+    private void copy(int count) {
+        if (copiedWrites == appliedWrites && (copy.size() >= count || copy.size() == copiedSize)) {
+            return;
+        }
+        copy = instance.getStatistics(Math.max(count, pendingReadCount.getAndSet(0)));
+        copiedSize = instance.size();
+        copiedWrites = appliedWrites;
+    }
+
+    /**
+     * Keeps the metrics the task was queued with, so that it is dequeued from the same ones even if
+     * metrics are set meanwhile.
+     */
+    private abstract class QueuedTask implements Runnable {
+        final OccurrencesRatingMetrics metrics = QueuingOccurrencesRating.this.metrics;
+    }
+
+    private class RegisterWorker extends QueuedTask {
         final K key;
+        final int delta;
 
-        private RegisterWorker(K key) {
+        private RegisterWorker(K key, int delta) {
             this.key = key;
+            this.delta = delta;
         }
 
         @Override
         public void run() {
             try {
-                instance.register(key);
+                appliedWrites++;
+                instance.register(key, delta);
             } finally {
-                semaphore.release();
+                release(metrics);
             }
         }
     }
 
-    private class GetTopWorker implements Callable<List<K>> {
-        private final int count;
+    private class RegisterAllWorker extends QueuedTask {
+        final Map<K, Integer> counts;
 
-        public GetTopWorker(int count) {
-            this.count = count;
+        private RegisterAllWorker(Map<K, Integer> counts) {
+            this.counts = counts;
         }
 
         @Override
-        public List<K> call() throws Exception {
+        public void run() {
             try {
-                return instance.getTop(count);
+                appliedWrites++;
+                for (Map.Entry<K, Integer> entry : counts.entrySet()) {
+                    instance.register(entry.getKey(), entry.getValue());
+                }
             } finally {
-                semaphore.release();
+                release(metrics);
             }
         }
     }
 
-    private class GetStatisticWorker implements Callable<Map<K, Integer>> {
-        private final int count;
+    private abstract class ReadWorker<T> extends QueuedTask {
+        final int count;
+        final CompletableFuture<T> result = new CompletableFuture<>();
 
-        public GetStatisticWorker(int count) {
+        private ReadWorker(int count) {
             this.count = count;
         }
 
         @Override
-        public Map<K, Integer> call() throws Exception {
+        public void run() {
+            T value = null;
+            RuntimeException failure = null;
             try {
-                return instance.getStatistics(count);
-            } finally {
-                semaphore.release();
+                copy(count);
+                value = answer();
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            // counted before the reader can see the result
+            dequeued(metrics);
+            if (failure == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(failure);
             }
         }
+
+        abstract T answer();
     }
 
-    private class GetSizeWorker implements Callable<Integer> {
+    private class GetTopWorker extends ReadWorker<List<K>> {
+        private GetTopWorker(int count) {
+            super(count);
+        }
+
         @Override
-        public Integer call() throws Exception {
-            try {
-                return instance.size();
-            } finally {
-                semaphore.release();
+        List<K> answer() {
+            int realCount = Math.min(count, copy.size());
+            List<K> result = new ArrayList<>(realCount);
+            Iterator<K> iterator = copy.keySet().iterator();
+            for (int i = 0; i < realCount; i++) {
+                result.add(iterator.next());
             }
+            return result;
+        }
+    }
+
+    private class GetStatisticWorker extends ReadWorker<Map<K, Integer>> {
+        private GetStatisticWorker(int count) {
+            super(count);
+        }
+
+        @Override
+        Map<K, Integer> answer() {
+            if (count >= copy.size()) {
+                return new LinkedHashMap<>(copy);
+            }
+            Map<K, Integer> result = new LinkedHashMap<>(count * 2);
+            Iterator<Map.Entry<K, Integer>> iterator = copy.entrySet().iterator();
+            for (int i = 0; i < count; i++) {
+                Map.Entry<K, Integer> entry = iterator.next();
+                result.put(entry.getKey(), entry.getValue());
+            }
+            return result;
+        }
+    }
+
+    private class GetSizeWorker extends ReadWorker<Integer> {
+        private GetSizeWorker() {
+            super(0);
+        }
+
+        @Override
+        Integer answer() {
+            return copiedSize;
         }
     }
 }
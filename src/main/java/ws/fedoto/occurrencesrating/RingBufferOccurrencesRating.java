@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Like {@link QueuingOccurrencesRating} all registrations are applied to a {@link SimpleOccurrencesRating}
+ * by a single consumer thread, but producers hand keys over through a preallocated multi-producer
+ * ring buffer instead of an executor, so a registration allocates nothing. The consumer drains
+ * published slots in batches. Reads wait until every registration claimed before them is applied.
+ * <p>
+ * A registration that fails in the consumer is skipped and counted, see {@link #getFailureCount()}.
+ * {@link #close()} applies every registration claimed before it and stops the consumer thread, the
+ * rating cannot be registered to afterwards.
+ */
+public class RingBufferOccurrencesRating<K> extends AbstractOccurrencesRating<K> implements Closeable {
+    private static final int MAX_BATCH = 256;
+    /**
+     * Added to {@link #claimed} on close, so a sequence claimed afterwards is recognized as rejected.
+     */
+    private static final long CLOSED = 1L << 62;
+
+    private final SimpleOccurrencesRating<K> instance;
+    private final WaitStrategy waitStrategy;
+    private final Object[] keys;
+    private final int[] deltas;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong(-1);
+    final Thread consumer;
+    private volatile long end = Long.MAX_VALUE;
+    private volatile long failureCount;
+    private volatile RuntimeException lastFailure;
+
+    public RingBufferOccurrencesRating(int capacity) {
+        this(capacity, 1 << 14, WaitStrategy.PARK);
+    }
+
+    public RingBufferOccurrencesRating(int capacity, int bufferSize, WaitStrategy waitStrategy) {
+        this.instance = new SimpleOccurrencesRating<>(capacity);
+        this.waitStrategy = waitStrategy;
+        int realBufferSize = Integer.highestOneBit(Math.max(bufferSize, 1) * 2 - 1);
+        this.keys = new Object[realBufferSize];
+        this.deltas = new int[realBufferSize];
+        this.published = new AtomicLongArray(realBufferSize);
+        for (int i = 0; i < realBufferSize; i++) {
+            published.set(i, -1);
+        }
+        this.mask = realBufferSize - 1;
+        this.consumer = new Thread(new Consumer());
+        consumer.setDaemon(true);
+        consumer.setName(RingBufferOccurrencesRating.class.getSimpleName());
+        consumer.start();
+    }
+
+    /**
+     * Also records promotions and evictions of the underlying rating.
+     */
+    @Override
+    public void setMetrics(OccurrencesRatingMetrics metrics) {
+        super.setMetrics(metrics);
+        instance.setMetrics(metrics);
+    }
+
+    /**
+     * @throws IllegalStateException if the rating is closed
+     */
+    @Override
+    public void register(K key, int delta) throws IllegalArgumentException, IllegalStateException {
+        checkDelta(delta);
+        long sequence = claimed.getAndIncrement();
+        if (sequence >= CLOSED) {
+            throw new IllegalStateException("Rating is closed");
+        }
+        for (int attempt = 0; sequence - keys.length > consumed.get(); attempt++) {
+            waitStrategy.idle(attempt);
+        }
+        int slot = (int) sequence & mask;
+        keys[slot] = key;
+        deltas[slot] = delta;
+        published.lazySet(slot, sequence);
+    }
+
+    @Override
+    public List<K> getTop(int count) {
+        awaitConsumed();
+        synchronized (instance) {
+            return instance.getTop(count);
+        }
+    }
+
+    @Override
+    public Map<K, Integer> getStatistics(int count) {
+        awaitConsumed();
+        synchronized (instance) {
+            return instance.getStatistics(count);
+        }
+    }
+
+    @Override
+    public int size() {
+        awaitConsumed();
+        synchronized (instance) {
+            return instance.size();
+        }
+    }
+
+    /**
+     * @return number of registrations that threw in the consumer and were skipped
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return the last exception thrown by a skipped registration, or null
+     */
+    public RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Applies every registration claimed so far, waiting for the ones still being published, and
+     * stops the consumer thread. Reads keep working on the final state.
+     */
+    @Override
+    public void close() {
+        long sequence = claimed.get();
+        while (sequence < CLOSED && !claimed.compareAndSet(sequence, sequence + CLOSED)) {
+            sequence = claimed.get();
+        }
+        if (sequence < CLOSED) {
+            end = sequence;
+            LockSupport.unpark(consumer);
+        }
+        boolean interrupted = false;
+        while (consumer.isAlive()) {
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sequences rejected by {@link #close()} are never consumed, so then reads wait for the consumer
+     * to stop instead.
+     */
+    private void awaitConsumed() {
+        long target = claimed.get() - 1;
+        for (int attempt = 0; consumed.get() < target && consumer.isAlive(); attempt++) {
+            waitStrategy.idle(attempt);
+        }
+    }
+
+    /**
+     * How producers wait for a free slot, readers for the consumer, and the consumer for new keys.
+     */
+    public enum WaitStrategy {
+        /**
+         * Busy spin: the lowest latency, but burns a core per waiting thread.
+         */
+        SPIN {
+            @Override
+            void idle(int attempt) {
+            }
+        },
+        YIELD {
+            @Override
+            void idle(int attempt) {
+                Thread.yield();
+            }
+        },
+        /**
+         * Spins and yields for a short while, then parks for growing periods of time.
+         */
+        PARK {
+            private static final int SPINS = 100;
+            private static final int YIELDS = 200;
+            private static final long MAX_PARK_NANOS = 1000000;
+
+            @Override
+            void idle(int attempt) {
+                if (attempt < SPINS) {
+                    return;
+                }
+                if (attempt < YIELDS) {
+                    Thread.yield();
+                    return;
+                }
+                LockSupport.parkNanos(Math.min(1L << Math.min(attempt - YIELDS, 20), MAX_PARK_NANOS));
+            }
+        };
+
+        abstract void idle(int attempt);
+    }
+
+    private class Consumer implements Runnable {
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            long next = 0;
+            int attempt = 0;
+            while (true) {
+                // read before draining, so every sequence claimed before close() is applied
+                long stop = end;
+                int drained = 0;
+                synchronized (instance) {
+                    for (int slot = (int) next & mask; drained < MAX_BATCH && published.get(slot) == next;
+                         slot = (int) next & mask) {
+                        K key = (K) keys[slot];
+                        keys[slot] = null;
+                        try {
+                            instance.register(key, deltas[slot]);
+                        } catch (RuntimeException e) {
+                            lastFailure = e;
+                            failureCount++;
+                        }
+                        next++;
+                        drained++;
+                    }
+                }
+                if (drained == 0) {
+                    if (next >= stop) {
+                        return;
+                    }
+                    waitStrategy.idle(attempt++);
+                } else {
+                    consumed.set(next - 1);
+                    attempt = 0;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Rating whose state can be saved to a file and loaded back without replaying registrations.
+ */
+public interface SavableOccurrencesRating<K> extends OccurrencesRating<K> {
+    /**
+     * Writes keys, weights, order and insertion point to the file. The file is replaced only if the
+     * whole rating was written.
+     *
+     * @throws IllegalArgumentException if a key does not fit into the serializer's maximal size
+     */
+    public void save(Path path, KeySerializer<K> serializer) throws IOException, IllegalArgumentException;
+
+    /**
+     * Restores a saved rating into this empty one. Entries beyond the capacity of this rating are
+     * skipped.
+     *
+     * @throws IOException if the file is not a valid snapshot
+     * @throws IllegalStateException if the rating is not empty
+     */
+    public void load(Path path, KeySerializer<K> serializer) throws IOException, IllegalStateException;
+}
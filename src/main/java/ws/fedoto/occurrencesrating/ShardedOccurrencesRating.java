@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Thread-safe rating that spreads keys by hash over independent {@link SimpleOccurrencesRating}
+ * shards, each guarded by its own lock, so writers of different shards do not contend. Reads collect
+ * the top of every shard and merge them with a heap.
+ * <p>
+ * Hashing never spreads keys perfectly evenly, so each shard holds up to
+ * {@code 2 * capacity / shardsCount} keys (but not more than {@code capacity}) and the rating reports
+ * the heaviest {@code capacity} of them.
+ */
+public class ShardedOccurrencesRating<K> extends AbstractOccurrencesRating<K> {
+    private static final Comparator<Cursor<?>> CURSOR_COMPARATOR = new Comparator<Cursor<?>>() {
+        @Override
+        public int compare(Cursor<?> o1, Cursor<?> o2) {
+            int result = Integer.compare(o2.current.getValue(), o1.current.getValue());
+            return result != 0 ? result : Integer.compare(o1.shard, o2.shard);
+        }
+    };
+
+    private final int capacity;
+    private final SimpleOccurrencesRating<K>[] shards;
+
+    /**
+     * Creates a rating with one shard per available processor.
+     */
+    public ShardedOccurrencesRating(int capacity) {
+        this(capacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    // generic arrays can only be created raw
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ShardedOccurrencesRating(int capacity, int shardsCount) {
+        if (shardsCount < 1) {
+            throw new IllegalArgumentException("Shards count must be positive: " + shardsCount);
+        }
+        this.capacity = capacity;
+        this.shards = new SimpleOccurrencesRating[shardsCount];
+        int shardCapacity = (int) Math.min(capacity, ((long) capacity * 2 + shardsCount - 1) / shardsCount);
+        for (int i = 0; i < shardsCount; i++) {
+            shards[i] = new SimpleOccurrencesRating<>(shardCapacity);
+        }
+    }
+
+    /**
+     * Also records promotions and evictions of every shard.
+     */
+    @Override
+    public void setMetrics(OccurrencesRatingMetrics metrics) {
+        super.setMetrics(metrics);
+        for (SimpleOccurrencesRating<K> shard : shards) {
+            shard.setMetrics(metrics);
+        }
+    }
+
+    @Override
+    public void register(K key, int delta) throws IllegalArgumentException {
+        checkDelta(delta);
+        SimpleOccurrencesRating<K> shard = shards[shardIndex(key)];
+        synchronized (shard) {
+            shard.register(key, delta);
+        }
+    }
+
+    /**
+     * Takes the lock of every shard once per batch rather than once per key.
+     */
+    @Override
+    protected void registerAggregated(Map<K, Integer> counts) {
+        List<List<Map.Entry<K, Integer>>> byShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            byShard.add(null);
+        }
+        for (Map.Entry<K, Integer> e : counts.entrySet()) {
+            int index = shardIndex(e.getKey());
+            List<Map.Entry<K, Integer>> entries = byShard.get(index);
+            if (entries == null) {
+                entries = new ArrayList<>();
+                byShard.set(index, entries);
+            }
+            entries.add(e);
+        }
+        for (int i = 0; i < shards.length; i++) {
+            List<Map.Entry<K, Integer>> entries = byShard.get(i);
+            if (entries == null) {
+                continue;
+            }
+            SimpleOccurrencesRating<K> shard = shards[i];
+            synchronized (shard) {
+                for (Map.Entry<K, Integer> e : entries) {
+                    shard.register(e.getKey(), e.getValue());
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<K> getTop(int count) {
+        return new ArrayList<>(getStatistics(count).keySet());
+    }
+
+    @Override
+    public Map<K, Integer> getStatistics(int count) {
+        int realCount = Math.min(count, capacity);
+        PriorityQueue<Cursor<K>> heap = new PriorityQueue<>(shards.length, CURSOR_COMPARATOR);
+        for (int i = 0; i < shards.length; i++) {
+            Map<K, Integer> top;
+            synchronized (shards[i]) {
+                top = shards[i].getStatistics(realCount);
+            }
+            Iterator<Map.Entry<K, Integer>> iterator = top.entrySet().iterator();
+            if (iterator.hasNext()) {
+                heap.add(new Cursor<>(i, iterator));
+            }
+        }
+        Map<K, Integer> result = new LinkedHashMap<>(realCount * 2);
+        while (result.size() < realCount && !heap.isEmpty()) {
+            Cursor<K> cursor = heap.poll();
+            result.put(cursor.current.getKey(), cursor.current.getValue());
+            if (cursor.iterator.hasNext()) {
+                cursor.current = cursor.iterator.next();
+                heap.add(cursor);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        int result = 0;
+        for (SimpleOccurrencesRating<K> shard : shards) {
+            synchronized (shard) {
+                result += shard.size();
+            }
+        }
+        return Math.min(result, capacity);
+    }
+
+    private int shardIndex(K key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % shards.length;
+    }
+
+    static private class Cursor<K> {
+        private final int shard;
+        private final Iterator<Map.Entry<K, Integer>> iterator;
+        private Map.Entry<K, Integer> current;
+
+        public Cursor(int shard, Iterator<Map.Entry<K, Integer>> iterator) {
+            this.shard = shard;
+            this.iterator = iterator;
+            this.current = iterator.next();
+        }
+    }
+}
@@ -19,6 +19,8 @@
 
 package ws.fedoto.occurrencesrating;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -28,26 +30,47 @@ import java.util.Map;
 /**
  *
  */
-public class SimpleOccurrencesRating<K> implements OccurrencesRating<K> {
+public class SimpleOccurrencesRating<K> extends AbstractOccurrencesRating<K> implements SavableOccurrencesRating<K> {
     private final int capacity;
+    private final AdmissionFilter admissionFilter;
     private final Map<K, Node<K>> index;
     private Node<K> top;
     private Node<K> bottom;
     private Node<K> insertionPoint;
+    private Node<K> spare;
 
     public SimpleOccurrencesRating(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * @param admissionFilter decides whether a new key may evict the bottom one of a full rating,
+     *                        may be null to admit every key
+     */
+    public SimpleOccurrencesRating(int capacity, AdmissionFilter admissionFilter) {
         this.capacity = capacity;
+        this.admissionFilter = admissionFilter;
         this.index = new HashMap<>(capacity * 2);
     }
 
     @Override
-    public void register(K key) {
+    public void register(K key, int delta) throws IllegalArgumentException {
+        checkDelta(delta);
+        if (admissionFilter != null) {
+            admissionFilter.record(key, delta);
+        }
         Node<K> node = index.get(key);
         if (node == null) {
-            node = new Node<>(key);
+            if (admissionFilter != null && index.size() >= capacity && !admissionFilter.admit(key, bottom.key)) {
+                return;
+            }
+            node = newNode(key);
             add(node);
+            if (delta > 1) {
+                promote(node, delta - 1);
+            }
         } else {
-            promote(node);
+            promote(node, delta);
         }
     }
 
@@ -55,7 +78,8 @@ public class SimpleOccurrencesRating<K> implements OccurrencesRating<K> {
     public List<K> getTop(int count) {
         int realCount = Math.min(count, index.size());
         List<K> result = new ArrayList<>(realCount);
-        for (Node<K> current = top; current != null; current = current.next) {
+        Node<K> current = top;
+        for (int i = 0; i < realCount; i++, current = current.next) {
             result.add(current.key);
         }
         return result;
@@ -65,17 +89,87 @@ public class SimpleOccurrencesRating<K> implements OccurrencesRating<K> {
     public Map<K, Integer> getStatistics(int count) {
         int realCount = Math.min(count, index.size());
         Map<K, Integer> result = new LinkedHashMap<>(realCount * 2);
-        for (Node<K> current = top; current != null; current = current.next) {
+        Node<K> current = top;
+        for (int i = 0; i < realCount; i++, current = current.next) {
             result.put(current.key, current.weight);
         }
         return result;
     }
 
+    @Override
+    boolean isSingleWriter() {
+        return true;
+    }
+
     @Override
     public int size() {
         return index.size();
     }
 
+    /**
+     * Writes keys, weights, order and insertion point to the file, see {@link #load}. The file is
+     * replaced only if the whole rating was written.
+     *
+     * @throws IllegalArgumentException if a key does not fit into the serializer's maximal size
+     */
+    @Override
+    public void save(Path path, KeySerializer<K> serializer) throws IOException, IllegalArgumentException {
+        int insertionPointIndex = -1;
+        int i = 0;
+        for (Node<K> current = top; current != null; current = current.next, i++) {
+            if (current == insertionPoint) {
+                insertionPointIndex = i;
+            }
+        }
+        try (SnapshotFormat.Writer<K> writer = new SnapshotFormat.Writer<>(path, serializer, capacity, index.size(), insertionPointIndex)) {
+            for (Node<K> current = top; current != null; current = current.next) {
+                writer.write(current.key, current.weight);
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * Restores a rating saved by {@link #save} or {@link ConcurrentOccurrencesRating#save} into this
+     * empty rating, without replaying registrations. Entries beyond the capacity of this rating are
+     * skipped, and an insertion point among them or below the bottom entry is moved to the bottom
+     * entry.
+     *
+     * @throws IllegalStateException if the rating is not empty
+     */
+    @Override
+    public void load(Path path, KeySerializer<K> serializer) throws IOException, IllegalStateException {
+        if (!index.isEmpty()) {
+            throw new IllegalStateException("Rating is not empty");
+        }
+        try (SnapshotFormat.Reader<K> reader = new SnapshotFormat.Reader<>(path, serializer)) {
+            int count = Math.min(reader.size(), capacity);
+            int insertionPointIndex = Math.min(reader.insertionPoint(), count - 1);
+            for (int i = 0; i < count; i++) {
+                reader.next();
+                Node<K> node = new Node<>(reader.key());
+                node.weight = reader.weight();
+                if (bottom != null && node.weight > bottom.weight) {
+                    throw new IOException("Corrupted snapshot: weights are not ordered");
+                }
+                index.put(node.key, node);
+                insert(node, bottom, null);
+                if (i == insertionPointIndex) {
+                    insertionPoint = node;
+                }
+            }
+            if (insertionPoint == null) {
+                insertionPoint = bottom;
+            }
+        } catch (IOException | RuntimeException e) {
+            index.clear();
+            top = null;
+            bottom = null;
+            insertionPoint = null;
+            throw e;
+        }
+    }
+
     private void add(Node<K> item) {
         index.put(item.key, item);
         if (top == null) {
@@ -91,21 +185,45 @@ public class SimpleOccurrencesRating<K> implements OccurrencesRating<K> {
         item.weight = insertionPoint.weight;
         insertionPoint = item;
         if (index.size() > capacity) {
-            index.remove(bottom.key);
-            remove(bottom);
+            Node<K> last = bottom;
+            index.remove(last.key);
+            remove(last);
+            last.key = null;
+            spare = last;
+            if (recorder != null) {
+                recorder.evicted();
+            }
         }
     }
 
-    private void promote(Node<K> item) {
+    /**
+     * Reuses the node evicted last, if any.
+     */
+    private Node<K> newNode(K key) {
+        Node<K> result = spare;
+        if (result == null) {
+            return new Node<>(key);
+        }
+        spare = null;
+        result.key = key;
+        return result;
+    }
+
+    private void promote(Node<K> item, int delta) {
         if (item == insertionPoint && item.next != null) {
             insertionPoint = item.next;
         }
-        item.weight++;
+        item.weight += delta;
         Node<K> newPrev = item.prev;
+        int steps = 0;
         while (newPrev != null && item.compareTo(newPrev) >= 0) {
             newPrev = newPrev.prev;
+            steps++;
+        }
+        if (recorder != null) {
+            recorder.promoted(steps);
         }
-        if (newPrev == item.prev) {
+        if (steps == 0) {
             return;
         }
         remove(item);
@@ -168,7 +286,7 @@ public class SimpleOccurrencesRating<K> implements OccurrencesRating<K> {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
 
-            Node node = (Node) o;
+            Node<?> node = (Node<?>) o;
 
             return key.equals(node.key);
         }
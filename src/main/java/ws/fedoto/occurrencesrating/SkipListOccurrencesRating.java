@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Rating without locks on a {@link ConcurrentSkipListSet} of immutable positions ordered by weight and
+ * then by recency, so a promoted key goes above the keys of the same weight as in
+ * {@link SimpleOccurrencesRating}. A registration of a rated key moves it in O(log n): it swaps the
+ * current position of the key by a CAS, inserts the new position and removes the old one. A new key
+ * gets the weight of the key inserted last, as at the insertion point of the list-based ratings, and
+ * the lowest key is evicted when the rating is full.
+ * <p>
+ * Reads scan a prefix of the set without locking and skip positions that are no longer current, so
+ * a key being moved by a concurrent registration may be missing from a read. An eviction may yield
+ * while the set has no position to evict because concurrent registrations are moving the last keys,
+ * so the rating is not strictly lock-free.
+ */
+public class SkipListOccurrencesRating<K> extends AbstractOccurrencesRating<K> {
+    /**
+     * Set instead of the current position of an evicted key.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final Position EVICTED = new Position<>(null, -1, 0);
+
+    private final int capacity;
+    private final ConcurrentHashMap<K, Entry<K>> index;
+    private final ConcurrentSkipListSet<Position<K>> positions = new ConcurrentSkipListSet<>();
+    private final AtomicReference<Position<K>> insertionPoint = new AtomicReference<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public SkipListOccurrencesRating(int capacity) {
+        this.capacity = capacity;
+        this.index = new ConcurrentHashMap<>(capacity * 2);
+    }
+
+    @Override
+    public void register(K key, int delta) throws IllegalArgumentException {
+        checkDelta(delta);
+        while (true) {
+            Entry<K> entry = index.get(key);
+            if (entry == null) {
+                Position<K> ip = insertionPoint.get();
+                int weight = ip == null ? 1 : ip.weight;
+                entry = new Entry<>(key);
+                // set before the entry is indexed, so a concurrent promotion always finds a position
+                Position<K> position = new Position<>(entry, weight + delta - 1, sequence.incrementAndGet());
+                entry.position = position;
+                Entry<K> existsEntry = index.putIfAbsent(key, entry);
+                if (existsEntry == null) {
+                    indexed(key);
+                    add(position);
+                    return;
+                }
+                entry = existsEntry;
+            }
+            lookedUp(key);
+            if (promote(entry, delta)) {
+                return;
+            }
+            // evicted meanwhile, registers the key anew
+            index.remove(key, entry);
+        }
+    }
+
+    /**
+     * Called between the lookup of an existing entry and its promotion, for tests.
+     */
+    void lookedUp(K key) {
+    }
+
+    /**
+     * Called between the indexing of a new entry and the adding of its position, for tests.
+     */
+    void indexed(K key) {
+    }
+
+    private void add(Position<K> position) {
+        positions.add(position);
+        if (!position.isCurrent()) {
+            // moved by a concurrent registration before it was added
+            positions.remove(position);
+        }
+        insertionPoint.set(position);
+        size.incrementAndGet();
+        evictIfFull();
+    }
+
+    /**
+     * @return false if the entry was evicted
+     */
+    private boolean promote(Entry<K> entry, int delta) {
+        while (true) {
+            Position<K> current = entry.position;
+            if (current.weight < 0) {
+                return false;
+            }
+            Position<K> promoted = new Position<>(entry, current.weight + delta, sequence.incrementAndGet());
+            if (!Entry.POSITION.compareAndSet(entry, current, promoted)) {
+                continue;
+            }
+            positions.add(promoted);
+            if (insertionPoint.get() == current) {
+                // the insertion point stays with the lowest key
+                Position<K> below = positions.higher(current);
+                insertionPoint.compareAndSet(current, below != null ? below : promoted);
+            }
+            positions.remove(current);
+            return true;
+        }
+    }
+
+    private void evictIfFull() {
+        while (true) {
+            int currentSize = size.get();
+            if (currentSize <= capacity) {
+                return;
+            }
+            if (size.compareAndSet(currentSize, currentSize - 1)) {
+                break;
+            }
+        }
+        while (true) {
+            // skips positions that are no longer current, their keys were moved up
+            Position<K> last = positions.pollLast();
+            if (last == null) {
+                // the current positions are being added by concurrent registrations
+                Thread.yield();
+                continue;
+            }
+            Entry<K> entry = last.entry;
+            if (last.isCurrent() && Entry.POSITION.compareAndSet(entry, last, EVICTED)) {
+                index.remove(entry.key, entry);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public List<K> getTop(int count) {
+        List<K> result = new ArrayList<>(Math.min(count, capacity));
+        for (Position<K> position : positions) {
+            if (result.size() >= count) {
+                break;
+            }
+            if (position.isCurrent()) {
+                result.add(position.entry.key);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<K, Integer> getStatistics(int count) {
+        Map<K, Integer> result = new LinkedHashMap<>(Math.min(count, capacity) * 2);
+        for (Position<K> position : positions) {
+            if (result.size() >= count) {
+                break;
+            }
+            if (position.isCurrent()) {
+                result.put(position.entry.key, position.weight);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return Math.min(size.get(), capacity);
+    }
+
+    static private class Entry<K> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Entry, Position> POSITION =
+                AtomicReferenceFieldUpdater.newUpdater(Entry.class, Position.class, "position");
+
+        private final K key;
+        private volatile Position<K> position;
+
+        private Entry(K key) {
+            this.key = key;
+        }
+    }
+
+    static private class Position<K> implements Comparable<Position<K>> {
+        private final Entry<K> entry;
+        private final int weight;
+        private final long sequence;
+
+        private Position(Entry<K> entry, int weight, long sequence) {
+            this.entry = entry;
+            this.weight = weight;
+            this.sequence = sequence;
+        }
+
+        boolean isCurrent() {
+            return entry.position == this;
+        }
+
+        /**
+         * Heavier first, then the most recently moved first.
+         */
+        @Override
+        public int compareTo(Position<K> o) {
+            int result = Integer.compare(o.weight, weight);
+            return result != 0 ? result : Long.compare(o.sequence, sequence);
+        }
+    }
+}
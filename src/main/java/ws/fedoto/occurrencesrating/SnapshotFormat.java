@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file format of a saved rating: a header of magic, version, capacity, number of entries and
+ * index of the insertion point, followed by entries from the top to the bottom, each being the
+ * weight, the key length and the key bytes produced by a {@link KeySerializer}. All numbers are
+ * big-endian ints. The insertion point is -1 in an empty file and the number of entries when new
+ * keys go below the bottom entry.
+ * <p>
+ * Files are written through a buffer into a temporary sibling file, which replaces the target only
+ * once it is complete and forced, so a failed save keeps the previous file. They are read through
+ * memory-mapped chunks, so loading does not copy the file into the heap except for the keys
+ * themselves.
+ */
+final class SnapshotFormat {
+    static final int MAGIC = 0x4F524154;
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int ENTRY_HEADER_SIZE = 8;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final long MAPPED_CHUNK_SIZE = 1 << 30;
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * Writes into a temporary file that {@link #commit()} moves to the target, closing without a
+     * commit deletes it.
+     */
+    static class Writer<K> implements AutoCloseable {
+        private final Path path;
+        private final Path temporary;
+        private final FileChannel channel;
+        private final KeySerializer<K> serializer;
+        private final ByteBuffer buffer;
+        private final ByteBuffer keyBuffer;
+
+        Writer(Path path, KeySerializer<K> serializer, int capacity, int size, int insertionPoint) throws IOException {
+            this.path = path;
+            this.temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.serializer = serializer;
+            this.buffer = ByteBuffer.allocateDirect(Math.max(WRITE_BUFFER_SIZE, HEADER_SIZE + ENTRY_HEADER_SIZE + serializer.maxSize()));
+            this.keyBuffer = ByteBuffer.allocate(serializer.maxSize());
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(size).putInt(insertionPoint);
+        }
+
+        /**
+         * @throws IllegalArgumentException if the key does not fit into the serializer's maximal size
+         */
+        void write(K key, int weight) throws IOException, IllegalArgumentException {
+            keyBuffer.clear();
+            serializer.write(key, keyBuffer);
+            keyBuffer.flip();
+            if (buffer.remaining() < ENTRY_HEADER_SIZE + keyBuffer.remaining()) {
+                flush();
+            }
+            buffer.putInt(weight).putInt(keyBuffer.remaining()).put(keyBuffer);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Replaces the target with the written file.
+         */
+        void commit() throws IOException {
+            flush();
+            channel.force(false);
+            channel.close();
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel.isOpen()) {
+                channel.close();
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    static class Reader<K> implements AutoCloseable {
+        private final FileChannel channel;
+        private final KeySerializer<K> serializer;
+        private final long fileSize;
+        private final int capacity;
+        private final int size;
+        private final int insertionPoint;
+        private MappedByteBuffer buffer;
+        private long bufferOffset;
+        private int weight;
+        private K key;
+
+        Reader(Path path, KeySerializer<K> serializer) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.serializer = serializer;
+            try {
+                this.fileSize = channel.size();
+                map(0);
+                ensure(HEADER_SIZE);
+                if (buffer.getInt() != MAGIC) {
+                    throw new IOException("Not a rating snapshot: " + path);
+                }
+                int version = buffer.getInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported snapshot version: " + version);
+                }
+                this.capacity = buffer.getInt();
+                this.size = buffer.getInt();
+                if (size < 0) {
+                    throw new IOException("Corrupted snapshot: size " + size);
+                }
+                int insertionPoint = buffer.getInt();
+                if (insertionPoint < (size == 0 ? -1 : 0) || insertionPoint > size) {
+                    throw new IOException("Corrupted snapshot: insertion point " + insertionPoint + " of " + size + " entries");
+                }
+                this.insertionPoint = Math.max(insertionPoint, 0);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        int capacity() {
+            return capacity;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return index of the insertion point among entries, {@link #size()} if new keys go below the
+         * bottom entry
+         */
+        int insertionPoint() {
+            return insertionPoint;
+        }
+
+        /**
+         * Reads the next entry, which is then available through {@link #key()} and {@link #weight()}.
+         */
+        void next() throws IOException {
+            ensure(ENTRY_HEADER_SIZE);
+            weight = buffer.getInt();
+            int keySize = buffer.getInt();
+            if (keySize < 0 || keySize > serializer.maxSize()) {
+                throw new IOException("Corrupted snapshot: key size " + keySize);
+            }
+            ensure(keySize);
+            ByteBuffer keyBytes = buffer.duplicate();
+            keyBytes.limit(keyBytes.position() + keySize);
+            buffer.position(buffer.position() + keySize);
+            key = serializer.read(keyBytes);
+        }
+
+        K key() {
+            return key;
+        }
+
+        int weight() {
+            return weight;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            long offset = bufferOffset + buffer.position();
+            if (offset + bytes > fileSize) {
+                throw new EOFException("Truncated snapshot");
+            }
+            map(offset);
+        }
+
+        private void map(long offset) throws IOException {
+            bufferOffset = offset;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAPPED_CHUNK_SIZE, fileSize - offset));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Approximate rating based on the Space-Saving algorithm. When the rating is full, a new key takes
+ * over the node of the lightest key. No key out of the rating could have occurred more often than the
+ * heaviest key ever evicted, so the new key starts from that weight, and the inherited weight is
+ * remembered as its error. For every key in the rating
+ * {@code weight - error <= true occurrences <= weight}, the error is never above
+ * {@code total / capacity}, and every key that occurs more than {@code total / capacity} times is
+ * guaranteed to be in the rating, whatever the number of distinct keys in the stream.
+ * <p>
+ * An optional {@link CountMinSketch} tightens the weight a new key starts with: it counts every
+ * occurrence, and a new key starts from the sketch estimate when that is lower. Both are upper bounds
+ * of the true count, so the guarantees above still hold.
+ * <p>
+ * Ratings of different nodes can be combined with {@link #merge(OccurrencesRating)} or through
+ * {@link OccurrencesSummary}, keeping the guarantees with the bound of the merged summary.
+ * <p>
+ * Nodes of equal weight are kept in buckets, so registration costs constant time. Like
+ * {@link SimpleOccurrencesRating} this class is not thread-safe.
+ */
+public class SpaceSavingOccurrencesRating<K> extends AbstractOccurrencesRating<K> {
+    private final int capacity;
+    private CountMinSketch sketch;
+    private final Map<K, Node<K>> index;
+    private Bucket<K> topBucket;
+    private Bucket<K> bottomBucket;
+    private long total;
+    private int evictedWeight;
+
+    public SpaceSavingOccurrencesRating(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * @param sketch counts every registration to tighten the weight of new keys, may be null
+     */
+    public SpaceSavingOccurrencesRating(int capacity, CountMinSketch sketch) {
+        this.capacity = capacity;
+        this.sketch = sketch;
+        this.index = new HashMap<>(capacity * 2);
+    }
+
+    @Override
+    public void register(K key, int delta) throws IllegalArgumentException {
+        checkDelta(delta);
+        total += delta;
+        int estimate = sketch == null ? Integer.MAX_VALUE : sketch.add(key, delta);
+        Node<K> node = index.get(key);
+        if (node != null) {
+            Bucket<K> from = node.bucket;
+            leave(node);
+            place(node, from.weight + delta, from);
+            removeIfEmpty(from);
+            return;
+        }
+        if (index.size() < capacity) {
+            // not full, but a merged summary of a smaller capacity may have dropped keys already
+            node = new Node<>(key);
+            int weight = Math.max(Math.min(evictedWeight + delta, estimate), delta);
+            node.error = weight - delta;
+            index.put(key, node);
+            place(node, weight, bottomBucket);
+            return;
+        }
+        node = bottomBucket.tail;
+        Bucket<K> from = node.bucket;
+        index.remove(node.key);
+        node.key = key;
+        index.put(key, node);
+        evictedWeight = Math.max(evictedWeight, from.weight);
+        int weight = Math.max(Math.min(evictedWeight + delta, estimate), delta);
+        node.error = weight - delta;
+        leave(node);
+        place(node, weight, from);
+        removeIfEmpty(from);
+    }
+
+    /**
+     * Merges another Space-Saving rating through {@link OccurrencesSummary}, other ratings are merged
+     * as if their weights were registered here. The sketch is merged too if both ratings have one of
+     * the same dimensions, otherwise it is dropped, as it does not count merged occurrences.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void merge(OccurrencesRating<? extends K> other) {
+        if (other instanceof SpaceSavingOccurrencesRating) {
+            SpaceSavingOccurrencesRating<K> rating = (SpaceSavingOccurrencesRating<K>) other;
+            CountMinSketch ownSketch = sketch;
+            merge(rating.summarize());
+            if (ownSketch != null && rating.sketch != null && ownSketch.hasSameDimensions(rating.sketch)) {
+                ownSketch.merge(rating.sketch);
+                sketch = ownSketch;
+            }
+        } else {
+            super.merge(other);
+        }
+    }
+
+    /**
+     * Replaces the content of the rating with the result of merging it with the summary, capacity of
+     * the rating stays the same. Drops the sketch.
+     */
+    public void merge(OccurrencesSummary<K> summary) {
+        OccurrencesSummary<K> merged = summarize().merge(summary);
+        sketch = null;
+        index.clear();
+        topBucket = null;
+        bottomBucket = null;
+        total = merged.getTotal();
+        evictedWeight = merged.getBound();
+        for (int i = 0; i < merged.size(); i++) {
+            Node<K> node = new Node<>(merged.key(i));
+            node.error = merged.error(i);
+            index.put(node.key, node);
+            append(node, merged.weight(i));
+        }
+    }
+
+    public OccurrencesSummary<K> summarize() {
+        int size = index.size();
+        Object[] keys = new Object[size];
+        int[] weights = new int[size];
+        int[] errors = new int[size];
+        int i = 0;
+        for (Bucket<K> bucket = topBucket; bucket != null; bucket = bucket.next) {
+            for (Node<K> current = bucket.head; current != null; current = current.next, i++) {
+                keys[i] = current.key;
+                weights[i] = bucket.weight;
+                errors[i] = current.error;
+            }
+        }
+        return new OccurrencesSummary<>(capacity, total, evictedWeight, keys, weights, errors);
+    }
+
+    @Override
+    public List<K> getTop(int count) {
+        int realCount = Math.min(count, index.size());
+        List<K> result = new ArrayList<>(realCount);
+        for (Bucket<K> bucket = topBucket; result.size() < realCount; bucket = bucket.next) {
+            for (Node<K> current = bucket.head; current != null && result.size() < realCount; current = current.next) {
+                result.add(current.key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Weights are upper bounds of the true number of occurrences, see {@link #getEstimates(int)} for
+     * the error of every weight.
+     */
+    @Override
+    public Map<K, Integer> getStatistics(int count) {
+        int realCount = Math.min(count, index.size());
+        Map<K, Integer> result = new LinkedHashMap<>(realCount * 2);
+        for (Bucket<K> bucket = topBucket; result.size() < realCount; bucket = bucket.next) {
+            for (Node<K> current = bucket.head; current != null && result.size() < realCount; current = current.next) {
+                result.put(current.key, bucket.weight);
+            }
+        }
+        return result;
+    }
+
+    public Map<K, Estimate> getEstimates(int count) {
+        int realCount = Math.min(count, index.size());
+        Map<K, Estimate> result = new LinkedHashMap<>(realCount * 2);
+        for (Bucket<K> bucket = topBucket; result.size() < realCount; bucket = bucket.next) {
+            for (Node<K> current = bucket.head; current != null && result.size() < realCount; current = current.next) {
+                result.put(current.key, new Estimate(bucket.weight, current.error));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return total number of registered occurrences
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    @Override
+    boolean isSingleWriter() {
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Puts the node at the head of the bucket with the given weight, searching bucket by bucket up
+     * from {@code from}.
+     */
+    private void place(Node<K> item, int weight, Bucket<K> from) {
+        Bucket<K> below;
+        Bucket<K> above;
+        if (from == null) {
+            below = null;
+            above = null;
+        } else {
+            below = from.weight < weight ? from : from.next;
+            above = below == null ? bottomBucket : below.prev;
+            while (above != null && above.weight < weight) {
+                below = above;
+                above = above.prev;
+            }
+        }
+        Bucket<K> target;
+        if (above != null && above.weight == weight) {
+            target = above;
+        } else {
+            target = new Bucket<>(weight);
+            target.prev = above;
+            target.next = below;
+            if (above == null) {
+                topBucket = target;
+            } else {
+                above.next = target;
+            }
+            if (below == null) {
+                bottomBucket = target;
+            } else {
+                below.prev = target;
+            }
+        }
+        item.bucket = target;
+        item.prev = null;
+        item.next = target.head;
+        if (target.head == null) {
+            target.tail = item;
+        } else {
+            target.head.prev = item;
+        }
+        target.head = item;
+    }
+
+    /**
+     * Puts the node at the tail of the bottom bucket, the weight must not be above the bottom one.
+     */
+    private void append(Node<K> item, int weight) {
+        if (bottomBucket == null || bottomBucket.weight != weight) {
+            Bucket<K> bucket = new Bucket<>(weight);
+            bucket.prev = bottomBucket;
+            if (bottomBucket == null) {
+                topBucket = bucket;
+            } else {
+                bottomBucket.next = bucket;
+            }
+            bottomBucket = bucket;
+        }
+        item.bucket = bottomBucket;
+        item.next = null;
+        item.prev = bottomBucket.tail;
+        if (bottomBucket.tail == null) {
+            bottomBucket.head = item;
+        } else {
+            bottomBucket.tail.next = item;
+        }
+        bottomBucket.tail = item;
+    }
+
+    private void leave(Node<K> item) {
+        Bucket<K> bucket = item.bucket;
+        if (item.prev == null) {
+            bucket.head = item.next;
+        } else {
+            item.prev.next = item.next;
+        }
+        if (item.next == null) {
+            bucket.tail = item.prev;
+        } else {
+            item.next.prev = item.prev;
+        }
+        item.prev = null;
+        item.next = null;
+    }
+
+    private void removeIfEmpty(Bucket<K> bucket) {
+        if (bucket.head != null) {
+            return;
+        }
+        if (bucket.prev == null) {
+            topBucket = bucket.next;
+        } else {
+            bucket.prev.next = bucket.next;
+        }
+        if (bucket.next == null) {
+            bottomBucket = bucket.prev;
+        } else {
+            bucket.next.prev = bucket.prev;
+        }
+    }
+
+    /**
+     * Weight of a key with its overestimation bound: the key occurred at least
+     * {@code weight - error} and at most {@code weight} times.
+     */
+    public static class Estimate {
+        private final int weight;
+        private final int error;
+
+        public Estimate(int weight, int error) {
+            this.weight = weight;
+            this.error = error;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getError() {
+            return error;
+        }
+
+        /**
+         * @return number of occurrences guaranteed to have happened
+         */
+        public int getGuaranteed() {
+            return weight - error;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Estimate estimate = (Estimate) o;
+
+            return weight == estimate.weight && error == estimate.error;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * weight + error;
+        }
+
+        @Override
+        public String toString() {
+            return "Estimate{" +
+                    "weight=" + weight +
+                    ", error=" + error +
+                    '}';
+        }
+    }
+
+    static private class Bucket<K> {
+        private final int weight;
+        private Node<K> head;
+        private Node<K> tail;
+        private Bucket<K> prev;
+        private Bucket<K> next;
+
+        public Bucket(int weight) {
+            this.weight = weight;
+        }
+
+        @Override
+        public String toString() {
+            return "Bucket{" +
+                    "weight=" + weight +
+                    '}';
+        }
+    }
+
+    static private class Node<K> {
+        private K key;
+        private int error;
+        private Bucket<K> bucket;
+        private Node<K> next;
+        private Node<K> prev;
+
+        public Node(K key) {
+            this.key = key;
+        }
+
+        @Override
+        public String toString() {
+            return "Node{" +
+                    "key=" + key +
+                    ", weight=" + bucket.weight +
+                    ", error=" + error +
+                    '}';
+        }
+    }
+}
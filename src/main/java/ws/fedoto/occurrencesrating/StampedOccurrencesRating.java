@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Makes a single-threaded rating thread safe with a {@link StampedLock}. Registrations take the write
+ * lock. Reads first run without locking and keep the result if no write happened meanwhile, otherwise
+ * they are repeated under the read lock, so readers do not block each other or writers in a read-heavy
+ * mix.
+ * <p>
+ * An optimistic read may see a half-done write, so reads of the wrapped rating must end without
+ * side effects on any state: {@link SimpleOccurrencesRating} and {@link BucketedOccurrencesRating}
+ * walk at most {@code count} nodes and at worst fail with an exception, which is discarded.
+ */
+public class StampedOccurrencesRating<K> implements OccurrencesRating<K> {
+    private final OccurrencesRating<K> wrapped;
+    private final StampedLock lock = new StampedLock();
+
+    public StampedOccurrencesRating(OccurrencesRating<K> wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    @Override
+    public void register(K key) {
+        long stamp = lock.writeLock();
+        try {
+            wrapped.register(key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void register(K key, int delta) throws IllegalArgumentException {
+        long stamp = lock.writeLock();
+        try {
+            wrapped.register(key, delta);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void registerAll(Collection<? extends K> keys) {
+        long stamp = lock.writeLock();
+        try {
+            wrapped.registerAll(keys);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void registerAll(K[] keys, int offset, int length) {
+        long stamp = lock.writeLock();
+        try {
+            wrapped.registerAll(keys, offset, length);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public List<K> getTop(final int count) {
+        return read(() -> wrapped.getTop(count));
+    }
+
+    @Override
+    public Map<K, Integer> getStatistics(final int count) {
+        return read(() -> wrapped.getStatistics(count));
+    }
+
+    @Override
+    public int size() {
+        return read(wrapped::size);
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // the state was changed during the read, retries under the lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
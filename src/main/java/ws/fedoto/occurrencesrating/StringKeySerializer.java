@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores strings as UTF-8 bytes.
+ */
+public class StringKeySerializer implements KeySerializer<String> {
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+    private final int maxSize;
+
+    public StringKeySerializer(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public int maxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public void write(String key, ByteBuffer buffer) throws IllegalArgumentException {
+        // encoded by hand straight into the buffer, so registering a key does not allocate
+        int start = buffer.position();
+        int length = key.length();
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c < 0x80) {
+                put(key, buffer, start, 1);
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                put(key, buffer, start, 2);
+                buffer.put((byte) (0xC0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(key.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, key.charAt(++i));
+                put(key, buffer, start, 4);
+                buffer.put((byte) (0xF0 | code >> 18));
+                buffer.put((byte) (0x80 | code >> 12 & 0x3F));
+                buffer.put((byte) (0x80 | code >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | code & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, replaced the same way String.getBytes does
+                put(key, buffer, start, 1);
+                buffer.put((byte) '?');
+            } else {
+                put(key, buffer, start, 3);
+                buffer.put((byte) (0xE0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private void put(String key, ByteBuffer buffer, int start, int bytes) throws IllegalArgumentException {
+        if (buffer.position() - start + bytes > maxSize) {
+            buffer.position(start);
+            throw new IllegalArgumentException("Key is longer than " + maxSize + " bytes: " + key);
+        }
+    }
+
+    @Override
+    public String read(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, CHARSET);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registrations only increment a counter in one of several stripes, chosen by the calling thread, so
+ * writers take no locks and rarely touch the same counter. A background thread periodically folds the
+ * counters into a {@link BucketedOccurrencesRating}. Reads are served from that rating and may miss
+ * registrations made during the last {@code maxStaleness}; a read merges pending counters itself when
+ * the last merge is older than that. With zero staleness every read merges, and no background thread
+ * is started. {@link #close()} stops the background thread.
+ */
+public class StripedOccurrencesRating<K> extends AbstractOccurrencesRating<K> implements Closeable {
+    private static final int DEAD = -1;
+    private static final long MIN_MERGE_PERIOD = TimeUnit.MILLISECONDS.toNanos(1);
+
+    final ScheduledExecutorService merger;
+    private final BucketedOccurrencesRating<K> rating;
+    private final AtomicReferenceArray<ConcurrentMap<K, AtomicInteger>> stripes;
+    private final int mask;
+    private final long maxStaleness;
+    private volatile long lastMerge;
+
+    public StripedOccurrencesRating(int capacity, long maxStaleness, TimeUnit unit) {
+        this(capacity, maxStaleness, unit, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public StripedOccurrencesRating(int capacity, long maxStaleness, TimeUnit unit, int stripesCount) {
+        this.rating = new BucketedOccurrencesRating<>(capacity);
+        int realStripesCount = Integer.highestOneBit(Math.max(stripesCount, 1) * 2 - 1);
+        this.stripes = new AtomicReferenceArray<>(realStripesCount);
+        for (int i = 0; i < realStripesCount; i++) {
+            stripes.set(i, new ConcurrentHashMap<K, AtomicInteger>());
+        }
+        this.mask = realStripesCount - 1;
+        this.maxStaleness = unit.toNanos(maxStaleness);
+        this.lastMerge = nanoTime();
+        if (this.maxStaleness == 0) {
+            this.merger = null;
+            return;
+        }
+        this.merger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread result = new Thread(r);
+                result.setDaemon(true);
+                result.setName(StripedOccurrencesRating.class.getSimpleName());
+                return result;
+            }
+        });
+        long period = Math.max(this.maxStaleness, MIN_MERGE_PERIOD);
+        merger.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                merge();
+            }
+        }, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Also records promotions and evictions of the underlying rating.
+     */
+    @Override
+    public void setMetrics(OccurrencesRatingMetrics metrics) {
+        super.setMetrics(metrics);
+        rating.setMetrics(metrics);
+    }
+
+    @Override
+    public void register(K key, int delta) throws IllegalArgumentException {
+        checkDelta(delta);
+        add(key, delta);
+    }
+
+    @Override
+    protected void registerAggregated(Map<K, Integer> counts) {
+        for (Map.Entry<K, Integer> entry : counts.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public List<K> getTop(int count) {
+        synchronized (rating) {
+            mergeIfStale();
+            return rating.getTop(count);
+        }
+    }
+
+    @Override
+    public Map<K, Integer> getStatistics(int count) {
+        synchronized (rating) {
+            mergeIfStale();
+            return rating.getStatistics(count);
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (rating) {
+            mergeIfStale();
+            return rating.size();
+        }
+    }
+
+    /**
+     * Folds all pending registrations into the ranked structure.
+     */
+    public void merge() {
+        synchronized (rating) {
+            lastMerge = nanoTime();
+            for (int i = 0; i < stripes.length(); i++) {
+                if (stripes.get(i).isEmpty()) {
+                    continue;
+                }
+                // a fresh map per merge: drained maps would keep their grown tables forever
+                ConcurrentMap<K, AtomicInteger> stripe = stripes.getAndSet(i, new ConcurrentHashMap<K, AtomicInteger>());
+                for (Map.Entry<K, AtomicInteger> entry : stripe.entrySet()) {
+                    int count = entry.getValue().getAndSet(DEAD);
+                    if (count > 0) {
+                        rating.register(entry.getKey(), count);
+                    }
+                }
+            }
+        }
+    }
+
+    private void add(K key, int delta) {
+        int index = (int) Thread.currentThread().getId() & mask;
+        while (true) {
+            ConcurrentMap<K, AtomicInteger> stripe = stripes.get(index);
+            AtomicInteger counter = stripe.get(key);
+            if (counter == null) {
+                counter = new AtomicInteger(delta);
+                if (stripe.putIfAbsent(key, counter) != null) {
+                    continue;
+                }
+                if (stripes.get(index) == stripe) {
+                    return;
+                }
+                // the stripe has been retired meanwhile, and the merger may have missed the new counter
+                delta = counter.getAndSet(DEAD);
+                if (delta == DEAD) {
+                    return;
+                }
+            } else {
+                int count = counter.get();
+                // a dead counter belongs to a retired stripe, the next round picks up the current one
+                if (count != DEAD && counter.compareAndSet(count, count + delta)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the background merges, reads keep merging pending registrations when they are stale.
+     */
+    @Override
+    public void close() {
+        if (merger != null) {
+            merger.shutdownNow();
+        }
+    }
+
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private void mergeIfStale() {
+        if (nanoTime() - lastMerge >= maxStaleness) {
+            merge();
+        }
+    }
+}
@@ -19,6 +19,7 @@
 
 package ws.fedoto.occurrencesrating;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -37,18 +38,33 @@ public class SynchronizedOccurrencesRating<K> implements OccurrencesRating<K> {
         wrapped.register(key);
     }
 
+    @Override
+    public synchronized void register(K key, int delta) throws IllegalArgumentException {
+        wrapped.register(key, delta);
+    }
+
+    @Override
+    public synchronized void registerAll(Collection<? extends K> keys) {
+        wrapped.registerAll(keys);
+    }
+
+    @Override
+    public synchronized void registerAll(K[] keys, int offset, int length) {
+        wrapped.registerAll(keys, offset, length);
+    }
+
     @Override
     public synchronized List<K> getTop(int count) {
         return wrapped.getTop(count);
     }
 
     @Override
-    public Map<K, Integer> getStatistics(int count) {
+    public synchronized Map<K, Integer> getStatistics(int count) {
         return wrapped.getStatistics(count);
     }
 
     @Override
-    public int size() {
+    public synchronized int size() {
         return wrapped.size();
     }
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts every tracked key exactly, but orders only the heaviest {@code topSize} of them, in a
+ * min-heap whose root is the threshold to enter the top. A registration of a key below the threshold
+ * is a counter increment, a key in or entering the top is sifted in O(log topSize), and
+ * {@code getTop(k)} selects the k heaviest keys of the heap and sorts only them, in
+ * O(topSize + k log k).
+ * <p>
+ * Reads return at most {@code topSize} keys, while {@link #size()} is the number of tracked keys. A
+ * new key starts with its own delta. When {@code capacity} keys are tracked, a new key evicts the
+ * lightest of a few randomly sampled keys outside of the top, so counts of keys that were evicted
+ * and came back are lower than their real counts.
+ */
+public class TopKOccurrencesRating<K> extends AbstractOccurrencesRating<K> {
+    private static final int EVICTION_SAMPLES = 5;
+    /**
+     * Heavier first, then the most recently registered first.
+     */
+    private static final Comparator<Entry<?>> ORDER = new Comparator<Entry<?>>() {
+        @Override
+        public int compare(Entry<?> o1, Entry<?> o2) {
+            int result = Integer.compare(o2.weight, o1.weight);
+            return result != 0 ? result : Long.compare(o2.touched, o1.touched);
+        }
+    };
+
+    private final int capacity;
+    private final Map<K, Entry<K>> index;
+    private final Entry<K>[] entries;
+    private final Entry<K>[] heap;
+    private int count;
+    private int heapSize;
+    private long sequence;
+    private int random = 0x9E3779B9;
+
+    // generic arrays can only be created raw
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TopKOccurrencesRating(int capacity, int topSize) {
+        if (topSize < 1 || topSize >= capacity) {
+            throw new IllegalArgumentException("Top size must be positive and less than capacity: " + topSize);
+        }
+        this.capacity = capacity;
+        this.index = new HashMap<>(capacity * 2);
+        this.entries = new Entry[capacity];
+        this.heap = new Entry[topSize];
+    }
+
+    @Override
+    public void register(K key, int delta) throws IllegalArgumentException {
+        checkDelta(delta);
+        Entry<K> entry = index.get(key);
+        if (entry == null) {
+            if (count == capacity) {
+                evict();
+            }
+            entry = new Entry<>(key, count);
+            entries[count++] = entry;
+            index.put(key, entry);
+        }
+        entry.weight += delta;
+        entry.touched = ++sequence;
+        if (entry.heapIndex >= 0) {
+            siftDown(entry.heapIndex);
+        } else if (heapSize < heap.length) {
+            entry.heapIndex = heapSize++;
+            heap[entry.heapIndex] = entry;
+            siftUp(entry.heapIndex);
+        } else if (entry.weight > heap[0].weight) {
+            heap[0].heapIndex = -1;
+            heap[0] = entry;
+            entry.heapIndex = 0;
+            siftDown(0);
+        }
+    }
+
+    @Override
+    public List<K> getTop(int count) {
+        Entry<K>[] top = sortedTop(count);
+        int realCount = top.length;
+        List<K> result = new ArrayList<>(realCount);
+        for (int i = 0; i < realCount; i++) {
+            result.add(top[i].key);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<K, Integer> getStatistics(int count) {
+        Entry<K>[] top = sortedTop(count);
+        int realCount = top.length;
+        Map<K, Integer> result = new LinkedHashMap<>(realCount * 2);
+        for (int i = 0; i < realCount; i++) {
+            result.put(top[i].key, top[i].weight);
+        }
+        return result;
+    }
+
+    @Override
+    boolean isSingleWriter() {
+        return true;
+    }
+
+    /**
+     * @return number of tracked keys, reads return at most {@code topSize} of them
+     */
+    @Override
+    public int size() {
+        return count;
+    }
+
+    private Entry<K>[] sortedTop(int count) {
+        Entry<K>[] result = Arrays.copyOf(heap, heapSize);
+        if (count < heapSize) {
+            select(result, Math.max(count, 0));
+            result = Arrays.copyOf(result, Math.max(count, 0));
+        }
+        Arrays.sort(result, ORDER);
+        return result;
+    }
+
+    /**
+     * Quickselect: moves the first {@code k} entries in {@link #ORDER} to the beginning of the array,
+     * in no particular order.
+     */
+    private static <K> void select(Entry<K>[] entries, int k) {
+        int left = 0;
+        int right = entries.length - 1;
+        while (left < right) {
+            int pivot = partition(entries, left, right);
+            if (pivot == k || pivot == k - 1) {
+                return;
+            }
+            if (pivot < k) {
+                left = pivot + 1;
+            } else {
+                right = pivot - 1;
+            }
+        }
+    }
+
+    private static <K> int partition(Entry<K>[] entries, int left, int right) {
+        swap(entries, (left + right) >>> 1, right);
+        Entry<K> pivot = entries[right];
+        int store = left;
+        for (int i = left; i < right; i++) {
+            if (ORDER.compare(entries[i], pivot) < 0) {
+                swap(entries, i, store++);
+            }
+        }
+        swap(entries, store, right);
+        return store;
+    }
+
+    private static <K> void swap(Entry<K>[] entries, int i, int j) {
+        Entry<K> entry = entries[i];
+        entries[i] = entries[j];
+        entries[j] = entry;
+    }
+
+    private void evict() {
+        Entry<K> victim = null;
+        for (int i = 0; i < EVICTION_SAMPLES || victim == null; i++) {
+            Entry<K> candidate = entries[nextRandom(count)];
+            if (candidate.heapIndex < 0 && (victim == null || ORDER.compare(candidate, victim) > 0)) {
+                victim = candidate;
+            }
+        }
+        index.remove(victim.key);
+        Entry<K> last = entries[--count];
+        entries[victim.slot] = last;
+        last.slot = victim.slot;
+        entries[count] = null;
+    }
+
+    private int nextRandom(int bound) {
+        random ^= random << 13;
+        random ^= random >>> 17;
+        random ^= random << 5;
+        return (int) ((random & 0xFFFFFFFFL) % bound);
+    }
+
+    private void siftUp(int i) {
+        Entry<K> entry = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (ORDER.compare(heap[parent], entry) >= 0) {
+                break;
+            }
+            place(heap[parent], i);
+            i = parent;
+        }
+        place(entry, i);
+    }
+
+    private void siftDown(int i) {
+        Entry<K> entry = heap[i];
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < heapSize && ORDER.compare(heap[right], heap[child]) > 0) {
+                child = right;
+            }
+            if (ORDER.compare(entry, heap[child]) >= 0) {
+                break;
+            }
+            place(heap[child], i);
+            i = child;
+        }
+        place(entry, i);
+    }
+
+    private void place(Entry<K> entry, int i) {
+        heap[i] = entry;
+        entry.heapIndex = i;
+    }
+
+    static private class Entry<K> {
+        private final K key;
+        private int weight;
+        private long touched;
+        private int slot;
+        private int heapIndex = -1;
+
+        private Entry(K key, int slot) {
+            this.key = key;
+            this.slot = slot;
+        }
+    }
+}
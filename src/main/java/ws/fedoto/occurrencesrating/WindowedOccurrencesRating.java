@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts only occurrences registered during the last {@code window}. The window is a ring of time
+ * slices, each slice holds the counts registered during its time span. The counts of all live
+ * slices are kept merged in a list of weight buckets, so when the window advances the expired slice
+ * is simply subtracted from it, and reads walk only the requested number of entries.
+ * <p>
+ * Keys in the window are limited by capacity: before a new key is added, the lightest key that was
+ * least recently counted is evicted together with its slice counts, and starts from zero if it
+ * comes back. Keys of equal weight are ordered by the time they reached it, latest first. Like
+ * {@link SimpleOccurrencesRating} this class is not thread-safe.
+ */
+public class WindowedOccurrencesRating<K> extends AbstractOccurrencesRating<K> {
+    private final int capacity;
+    private final long sliceLength;
+    private final Map<K, Integer>[] slices;
+    private final Map<K, Node<K>> index;
+    private final long origin;
+    private long currentSlice;
+    private Bucket<K> topBucket;
+    private Bucket<K> bottomBucket;
+
+    /**
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    // generic arrays can only be created raw
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public WindowedOccurrencesRating(int capacity, long window, TimeUnit unit, int slicesCount)
+            throws IllegalArgumentException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.sliceLength = Math.max(unit.toNanos(window) / slicesCount, 1);
+        this.slices = new Map[slicesCount];
+        for (int i = 0; i < slicesCount; i++) {
+            slices[i] = new HashMap<>();
+        }
+        this.index = new HashMap<>(capacity * 2);
+        this.origin = nanoTime();
+    }
+
+    @Override
+    public void register(K key, int delta) throws IllegalArgumentException {
+        checkDelta(delta);
+        advance();
+        Map<K, Integer> slice = slices[(int) (currentSlice % slices.length)];
+        Integer count = slice.get(key);
+        slice.put(key, count == null ? delta : count + delta);
+        Node<K> node = index.get(key);
+        if (node == null) {
+            if (index.size() >= capacity) {
+                evict(bottomBucket.tail);
+            }
+            node = new Node<>(key);
+            index.put(key, node);
+            place(node, delta, bottomBucket, true);
+        } else {
+            Bucket<K> from = node.bucket;
+            int weight = from.weight + delta;
+            leave(node);
+            place(node, weight, from, true);
+            removeIfEmpty(from);
+        }
+    }
+
+    @Override
+    public List<K> getTop(int count) {
+        advance();
+        int realCount = Math.min(count, index.size());
+        List<K> result = new ArrayList<>(realCount);
+        for (Bucket<K> bucket = topBucket; result.size() < realCount; bucket = bucket.next) {
+            for (Node<K> current = bucket.head; current != null && result.size() < realCount; current = current.next) {
+                result.add(current.key);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<K, Integer> getStatistics(int count) {
+        advance();
+        int realCount = Math.min(count, index.size());
+        Map<K, Integer> result = new LinkedHashMap<>(realCount * 2);
+        for (Bucket<K> bucket = topBucket; result.size() < realCount; bucket = bucket.next) {
+            for (Node<K> current = bucket.head; current != null && result.size() < realCount; current = current.next) {
+                result.put(current.key, bucket.weight);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    boolean isSingleWriter() {
+        return true;
+    }
+
+    @Override
+    public int size() {
+        advance();
+        return index.size();
+    }
+
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private void advance() {
+        long slice = (nanoTime() - origin) / sliceLength;
+        if (slice <= currentSlice) {
+            return;
+        }
+        // only the slices that were live can expire, however long nothing has happened
+        long first = Math.max(currentSlice + 1, slice - slices.length + 1);
+        for (long i = first; i <= slice; i++) {
+            expire(slices[(int) (i % slices.length)]);
+        }
+        currentSlice = slice;
+    }
+
+    private void expire(Map<K, Integer> slice) {
+        for (Map.Entry<K, Integer> entry : slice.entrySet()) {
+            Node<K> node = index.get(entry.getKey());
+            Bucket<K> from = node.bucket;
+            int weight = from.weight - entry.getValue();
+            leave(node);
+            if (weight > 0) {
+                place(node, weight, from, false);
+            } else {
+                index.remove(node.key);
+            }
+            removeIfEmpty(from);
+        }
+        slice.clear();
+    }
+
+    private void evict(Node<K> item) {
+        Bucket<K> from = item.bucket;
+        leave(item);
+        removeIfEmpty(from);
+        index.remove(item.key);
+        for (Map<K, Integer> slice : slices) {
+            slice.remove(item.key);
+        }
+    }
+
+    /**
+     * Puts the node at the head of the bucket with the given weight, searching bucket by bucket up
+     * or down from {@code from}.
+     */
+    private void place(Node<K> item, int weight, Bucket<K> from, boolean up) {
+        Bucket<K> above;
+        Bucket<K> below;
+        if (from == null) {
+            above = null;
+            below = null;
+        } else if (up) {
+            below = from.weight < weight ? from : from.next;
+            above = below == null ? bottomBucket : below.prev;
+            while (above != null && above.weight < weight) {
+                below = above;
+                above = above.prev;
+            }
+        } else {
+            above = from.weight > weight ? from : from.prev;
+            below = above == null ? topBucket : above.next;
+            while (below != null && below.weight > weight) {
+                above = below;
+                below = below.next;
+            }
+        }
+        Bucket<K> target;
+        if (above != null && above.weight == weight) {
+            target = above;
+        } else if (below != null && below.weight == weight) {
+            target = below;
+        } else {
+            target = new Bucket<>(weight);
+            target.prev = above;
+            target.next = below;
+            if (above == null) {
+                topBucket = target;
+            } else {
+                above.next = target;
+            }
+            if (below == null) {
+                bottomBucket = target;
+            } else {
+                below.prev = target;
+            }
+        }
+        item.bucket = target;
+        item.prev = null;
+        item.next = target.head;
+        if (target.head == null) {
+            target.tail = item;
+        } else {
+            target.head.prev = item;
+        }
+        target.head = item;
+    }
+
+    private void leave(Node<K> item) {
+        Bucket<K> bucket = item.bucket;
+        if (item.prev == null) {
+            bucket.head = item.next;
+        } else {
+            item.prev.next = item.next;
+        }
+        if (item.next == null) {
+            bucket.tail = item.prev;
+        } else {
+            item.next.prev = item.prev;
+        }
+        item.prev = null;
+        item.next = null;
+    }
+
+    private void removeIfEmpty(Bucket<K> bucket) {
+        if (bucket.head != null) {
+            return;
+        }
+        if (bucket.prev == null) {
+            topBucket = bucket.next;
+        } else {
+            bucket.prev.next = bucket.next;
+        }
+        if (bucket.next == null) {
+            bottomBucket = bucket.prev;
+        } else {
+            bucket.next.prev = bucket.prev;
+        }
+    }
+
+    static private class Bucket<K> {
+        private final int weight;
+        private Node<K> head;
+        private Node<K> tail;
+        private Bucket<K> prev;
+        private Bucket<K> next;
+
+        public Bucket(int weight) {
+            this.weight = weight;
+        }
+
+        @Override
+        public String toString() {
+            return "Bucket{" +
+                    "weight=" + weight +
+                    '}';
+        }
+    }
+
+    static private class Node<K> {
+        private K key;
+        private Bucket<K> bucket;
+        private Node<K> next;
+        private Node<K> prev;
+
+        public Node(K key) {
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Node<?> node = (Node<?>) o;
+
+            return key.equals(node.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "Node{" +
+                    "key=" + key +
+                    ", weight=" + bucket.weight +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ */
+public class BucketedOccurrencesRatingTest extends OccurrencesRatingTest {
+    @Override
+    protected OccurrencesRating<String> createNewRating(int capacity) {
+        return new BucketedOccurrencesRating<>(capacity);
+    }
+
+    @Test
+    public void testSameAsSimple() throws Exception {
+        Random rand = new Random(1);
+        OccurrencesRating<String> expected = new SimpleOccurrencesRating<>(100);
+        instance = createNewRating(100);
+        for (int i = 0; i < 100000; i++) {
+            String key = String.valueOf((int) Math.abs(rand.nextGaussian() * 100));
+            int delta = 1 + rand.nextInt(3);
+            expected.register(key, delta);
+            instance.register(key, delta);
+        }
+        assertEquals(expected.size(), instance.size());
+        assertEquals(expected.getStatistics(100), instance.getStatistics(100));
+        assertEquals(expected.getTop(100), instance.getTop(100));
+    }
+}
@@ -19,6 +19,8 @@
 
 package ws.fedoto.occurrencesrating;
 
+import org.junit.Test;
+
 /**
  *
  */
@@ -28,4 +30,9 @@ public class ConcurrentOccurrencesRatingLoadTest extends OccurrencesRatingLoadTe
     protected OccurrencesRating<String> createNewRating(int capacity) {
         return new ConcurrentOccurrencesRating<>(capacity);
     }
+
+    @Test
+    public void test10000Callers_10000_2000() throws Exception {
+        callersTest(10000, 10000, 2000);
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class ConcurrentOccurrencesRatingSnapshotTest extends OccurrencesRatingTest {
+    private volatile long now;
+
+    @Override
+    protected OccurrencesRating<String> createNewRating(int capacity) {
+        return new ConcurrentOccurrencesRating<>(capacity, capacity, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testStaleWithinInterval() throws Exception {
+        ConcurrentOccurrencesRating<String> rating = new ConcurrentOccurrencesRating<String>(10, 10, 1, TimeUnit.SECONDS) {
+            @Override
+            long nanoTime() {
+                return now;
+            }
+        };
+        rating.register("A");
+        assertEquals(Arrays.asList("A"), rating.getTop(10));
+        rating.register("B", 3);
+        rating.register("A");
+        now += TimeUnit.MILLISECONDS.toNanos(999);
+        assertEquals(Arrays.asList("A"), rating.getTop(10));
+        assertEquals(Collections.singletonMap("A", 1), rating.getStatistics(10));
+        assertEquals(1, rating.size());
+        now += TimeUnit.MILLISECONDS.toNanos(1);
+        assertEquals(Arrays.asList("B", "A"), rating.getTop(10));
+        assertEquals(Integer.valueOf(2), rating.getStatistics(10).get("A"));
+        assertEquals(2, rating.size());
+        // larger reads are not served from the snapshot
+        rating.register("C");
+        assertEquals(3, rating.getTop(11).size());
+        assertEquals(2, rating.getTop(10).size());
+    }
+
+    @Test(timeout = 10000)
+    public void testSingleRefresher() throws Exception {
+        final CountDownLatch refreshing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<Thread> refresher = new AtomicReference<>();
+        final ConcurrentOccurrencesRating<String> rating = new ConcurrentOccurrencesRating<String>(10, 10, 1, TimeUnit.SECONDS) {
+            private int refresherCalls;
+
+            @Override
+            long nanoTime() {
+                // the second call of the refresher takes the snapshot, under the global lock
+                if (Thread.currentThread() == refresher.get() && ++refresherCalls == 2) {
+                    refreshing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return now;
+            }
+        };
+        rating.register("A");
+        assertEquals(Arrays.asList("A"), rating.getTop(10));
+        rating.register("B", 3);
+        now += TimeUnit.SECONDS.toNanos(1);
+        final AtomicReference<Object> refreshed = new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                refreshed.set(rating.getTop(10));
+            }
+        });
+        refresher.set(thread);
+        thread.start();
+        assertTrue(refreshing.await(5, TimeUnit.SECONDS));
+        // another reader neither waits for the refresh nor refreshes itself
+        assertEquals(Arrays.asList("A"), rating.getTop(10));
+        assertEquals(1, rating.size());
+        release.countDown();
+        thread.join();
+        assertEquals(Arrays.asList("B", "A"), refreshed.get());
+        assertEquals(Arrays.asList("B", "A"), rating.getTop(10));
+    }
+}
@@ -19,6 +19,15 @@
 
 package ws.fedoto.occurrencesrating;
 
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
 /**
  *
  */
@@ -27,4 +36,60 @@ public class ConcurrentOccurrencesRatingTest extends OccurrencesRatingTest {
     protected OccurrencesRating<String> createNewRating(int capacity) {
         return new ConcurrentOccurrencesRating<>(capacity);
     }
+
+    /**
+     * A writer adding a new key used to evict while holding the lock of the new node, which is linked
+     * right above the bottom node when the rating is nearly full. A writer promoting the bottom node
+     * locks from the bottom up and waits for the new node, while the evicting one waits for the bottom.
+     */
+    @Test(timeout = 60000)
+    public void testEvictionDoesNotDeadlockWithPromotion() throws Exception {
+        final ConcurrentOccurrencesRating<String> rating = new ConcurrentOccurrencesRating<>(2);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final Random random = new Random(t);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 200000; i++) {
+                        rating.register("K" + random.nextInt(5));
+                    }
+                }
+            });
+            // a deadlocked writer must not keep the test JVM alive
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(2, rating.size());
+    }
+
+    /**
+     * A writer that looked up the node of X is overtaken by writers that evict X and reuse its node
+     * for Z. Its promotion must give up instead of counting X as Z.
+     */
+    @Test
+    public void testPromotionOfRecycledNode() throws Exception {
+        ConcurrentOccurrencesRating<String> rating = new ConcurrentOccurrencesRating<String>(1) {
+            private boolean overtaken;
+
+            @Override
+            void lookedUp(String key) {
+                if (!overtaken) {
+                    overtaken = true;
+                    register("Y");
+                    register("Z");
+                }
+            }
+        };
+        rating.register("X");
+        rating.register("X", 5);
+        assertEquals(1, rating.size());
+        assertEquals(Collections.singletonMap("Z", 1), rating.getStatistics(1));
+        rating.register("Z", 2);
+        assertEquals(Collections.singletonMap("Z", 3), rating.getStatistics(1));
+    }
 }
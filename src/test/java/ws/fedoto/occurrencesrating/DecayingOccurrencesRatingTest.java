@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ */
+public class DecayingOccurrencesRatingTest extends OccurrencesRatingTest {
+    private long now;
+
+    @Override
+    protected OccurrencesRating<String> createNewRating(int capacity) {
+        return new DecayingOccurrencesRating<String>(capacity, 1, TimeUnit.SECONDS) {
+            @Override
+            long nanoTime() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void testDecay() throws Exception {
+        instance = createNewRating(HAPPY_CAPACITY);
+        instance.register("A", 4);
+        registerAndCheck("B", "B", "A");
+        checkWeights(e("B", 4), e("A", 4));
+        now += TimeUnit.SECONDS.toNanos(2);
+        checkWeights(e("B", 1), e("A", 1));
+        registerAndCheck("A", "A", "B");
+        checkWeights(e("A", 2), e("B", 1));
+        now += TimeUnit.SECONDS.toNanos(1);
+        registerAndCheck("C", "C", "A", "B");
+        checkWeights(e("C", 1), e("A", 1), e("B", 1));
+        Map<String, Double> scores = ((DecayingOccurrencesRating<String>) instance).getScores(HAPPY_CAPACITY);
+        assertEquals(1.0, scores.get("C"), 1e-9);
+        assertEquals(1.0, scores.get("A"), 1e-9);
+        assertEquals(0.5, scores.get("B"), 1e-9);
+    }
+
+    @Test
+    public void testRenormalization() throws Exception {
+        instance = createNewRating(HAPPY_CAPACITY);
+        instance.register("A", 3);
+        instance.register("B", 2);
+        for (int i = 0; i < 10; i++) {
+            now += TimeUnit.SECONDS.toNanos(50);
+            instance.register("C");
+        }
+        check("C", "B", "A");
+        Map<String, Double> scores = ((DecayingOccurrencesRating<String>) instance).getScores(HAPPY_CAPACITY);
+        assertEquals(1.0, scores.get("C"), 1e-9);
+        now += TimeUnit.SECONDS.toNanos(1);
+        instance.register("C");
+        scores = ((DecayingOccurrencesRating<String>) instance).getScores(HAPPY_CAPACITY);
+        assertEquals(1.5, scores.get("C"), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroHalfLife() throws Exception {
+        new DecayingOccurrencesRating<String>(HAPPY_CAPACITY, 0, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class JournalingOccurrencesRatingTest extends OccurrencesRatingTest {
+    private static final StringKeySerializer SERIALIZER = new StringKeySerializer(16);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private final List<JournalingOccurrencesRating<String>> opened = new ArrayList<>();
+
+    @Override
+    protected OccurrencesRating<String> createNewRating(int capacity) {
+        try {
+            return open(new SimpleOccurrencesRating<String>(capacity), folder.newFolder().toPath());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (JournalingOccurrencesRating<String> rating : opened) {
+            rating.close();
+        }
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        JournalingOccurrencesRating<String> rating = open(new SimpleOccurrencesRating<String>(20), directory);
+        register(rating, new Random(1));
+        rating.registerAll(Arrays.asList("A", "B", "A"));
+        rating.close();
+        JournalingOccurrencesRating<String> recovered = open(new SimpleOccurrencesRating<String>(20), directory);
+        assertStatistics(rating, recovered);
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        JournalingOccurrencesRating<String> rating = open(new ConcurrentOccurrencesRating<String>(20), directory);
+        Random random = new Random(2);
+        register(rating, random);
+        rating.checkpoint();
+        register(rating, random);
+        rating.checkpoint();
+        assertEquals(1, count(directory, "snapshot-*.bin"));
+        assertEquals(1, count(directory, "segment-*.log"));
+        register(rating, random);
+        rating.close();
+        JournalingOccurrencesRating<String> recovered = open(new ConcurrentOccurrencesRating<String>(20), directory);
+        assertStatistics(rating, recovered);
+        register(recovered, random);
+        recovered.close();
+        assertStatistics(recovered, open(new ConcurrentOccurrencesRating<String>(20), directory));
+    }
+
+    @Test
+    public void testTornTail() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        JournalingOccurrencesRating<String> rating = open(new SimpleOccurrencesRating<String>(20), directory);
+        rating.register("A", 2);
+        rating.register("B");
+        rating.close();
+        Path segment = directory.resolve(String.format("segment-%019d.log", 0));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        JournalingOccurrencesRating<String> recovered = open(new SimpleOccurrencesRating<String>(20), directory);
+        assertEquals(Arrays.asList("A"), recovered.getTop(10));
+    }
+
+    @Test
+    public void testZeroFilledTail() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        JournalingOccurrencesRating<String> rating = open(new SimpleOccurrencesRating<String>(20), directory);
+        rating.register("A", 2);
+        rating.register("B");
+        rating.close();
+        Path segment = directory.resolve(String.format("segment-%019d.log", 0));
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(100));
+        }
+        JournalingOccurrencesRating<String> recovered = open(new SimpleOccurrencesRating<String>(20), directory);
+        assertStatistics(rating, recovered);
+        assertEquals(size, Files.size(segment));
+        recovered.register("B");
+        recovered.close();
+        // the cut segment is no longer the last one
+        assertStatistics(recovered, open(new SimpleOccurrencesRating<String>(20), directory));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptedEarlierSegment() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        JournalingOccurrencesRating<String> rating = open(new SimpleOccurrencesRating<String>(20), directory);
+        rating.register("A");
+        rating.close();
+        rating = open(new SimpleOccurrencesRating<String>(20), directory);
+        rating.register("B");
+        rating.close();
+        Path segment = directory.resolve(String.format("segment-%019d.log", 0));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(100));
+        }
+        open(new SimpleOccurrencesRating<String>(20), directory);
+    }
+
+    @Test
+    public void testSegmentRolling() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        JournalingOccurrencesRating<String> rating = track(new JournalingOccurrencesRating<>(
+                new SimpleOccurrencesRating<String>(20), directory, SERIALIZER, 1000, 0, 0, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 10; i++) {
+            register(rating, new Random(i));
+            rating.close();
+            rating = track(new JournalingOccurrencesRating<>(
+                    new SimpleOccurrencesRating<String>(20), directory, SERIALIZER, 1000, 0, 0, TimeUnit.MILLISECONDS));
+        }
+        // every reopening starts a new segment, every batch write rolls a full one
+        assertTrue(count(directory, "segment-*.log") > 10);
+        register(rating, new Random(10));
+        rating.close();
+        JournalingOccurrencesRating<String> recovered = open(new SimpleOccurrencesRating<String>(20), directory);
+        assertStatistics(rating, recovered);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCheckpointOfNotSavable() throws Exception {
+        open(new BucketedOccurrencesRating<String>(20), folder.newFolder().toPath()).checkpoint();
+    }
+
+    private JournalingOccurrencesRating<String> open(OccurrencesRating<String> rating, Path directory) throws IOException {
+        return track(new JournalingOccurrencesRating<>(rating, directory, SERIALIZER));
+    }
+
+    private JournalingOccurrencesRating<String> track(JournalingOccurrencesRating<String> rating) {
+        opened.add(rating);
+        return rating;
+    }
+
+    private static void register(OccurrencesRating<String> rating, Random random) {
+        for (int i = 0; i < 1000; i++) {
+            rating.register("key" + (int) Math.pow(100, random.nextDouble()), 1 + random.nextInt(2));
+        }
+    }
+
+    private static void assertStatistics(OccurrencesRating<String> expected, OccurrencesRating<String> actual) {
+        assertEquals(new ArrayList<>(expected.getStatistics(20).entrySet()), new ArrayList<>(actual.getStatistics(20).entrySet()));
+    }
+
+    private static int count(Path directory, String glob) throws IOException {
+        int result = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path ignored : stream) {
+                result++;
+            }
+        }
+        return result;
+    }
+}
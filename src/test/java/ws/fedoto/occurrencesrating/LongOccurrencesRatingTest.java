@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ */
+public class LongOccurrencesRatingTest extends OccurrencesRatingTest {
+    @Override
+    protected OccurrencesRating<String> createNewRating(int capacity) {
+        return new LongAdapter(new LongOccurrencesRating(capacity));
+    }
+
+    @Test
+    public void testSameAsSimple() throws Exception {
+        Random rand = new Random(1);
+        OccurrencesRating<Long> expected = new SimpleOccurrencesRating<>(100);
+        LongOccurrencesRating actual = new LongOccurrencesRating(100);
+        for (int i = 0; i < 100000; i++) {
+            long key = (long) (rand.nextGaussian() * 100) * 0x100000000L;
+            int delta = 1 + rand.nextInt(3);
+            expected.register(key, delta);
+            actual.register(key, delta);
+        }
+        assertEquals(expected.size(), actual.size());
+        long[] keys = new long[100];
+        int[] weights = new int[100];
+        int count = actual.getStatistics(100, keys, weights);
+        Map<Long, Integer> actualStatistics = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            actualStatistics.put(keys[i], weights[i]);
+        }
+        assertEquals(new ArrayList<>(expected.getStatistics(100).entrySet()),
+                new ArrayList<>(actualStatistics.entrySet()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() throws Exception {
+        new LongOccurrencesRating(0);
+    }
+
+    /**
+     * Maps single-letter keys of the happy path test to their char codes.
+     */
+    private static class LongAdapter extends AbstractOccurrencesRating<String> {
+        private final LongOccurrencesRating rating;
+
+        private LongAdapter(LongOccurrencesRating rating) {
+            this.rating = rating;
+        }
+
+        @Override
+        public void register(String key, int delta) {
+            rating.register(key.charAt(0), delta);
+        }
+
+        @Override
+        public List<String> getTop(int count) {
+            long[] keys = new long[count];
+            int realCount = rating.getTop(count, keys);
+            List<String> result = new ArrayList<>(realCount);
+            for (int i = 0; i < realCount; i++) {
+                result.add(String.valueOf((char) keys[i]));
+            }
+            return result;
+        }
+
+        @Override
+        public Map<String, Integer> getStatistics(int count) {
+            long[] keys = new long[count];
+            int[] weights = new int[count];
+            int realCount = rating.getStatistics(count, keys, weights);
+            Map<String, Integer> result = new LinkedHashMap<>(realCount * 2);
+            for (int i = 0; i < realCount; i++) {
+                result.put(String.valueOf((char) keys[i]), weights[i]);
+            }
+            return result;
+        }
+
+        @Override
+        public int size() {
+            return rating.size();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class MeteredOccurrencesRatingTest extends SimpleOccurrencesRatingTest {
+    @Override
+    protected OccurrencesRating<String> createNewRating(int capacity) {
+        return new MeteredOccurrencesRating<>(super.createNewRating(capacity));
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        MeteredOccurrencesRating<String> rating = new MeteredOccurrencesRating<>(new SimpleOccurrencesRating<String>(2));
+        rating.register("A");
+        rating.register("B");
+        // passes B
+        rating.register("A");
+        // evicts B
+        rating.register("C");
+        // evicts C, D and A pass one node each
+        rating.registerAll(Arrays.asList("D", "D", "A"));
+        rating.getTop(2);
+        rating.getStatistics(2);
+
+        OccurrencesRatingMetrics metrics = rating.getMetrics();
+        assertEquals(7, metrics.getRegistrations());
+        assertEquals(2, metrics.getReads());
+        assertEquals(3, metrics.getPromotions());
+        assertEquals(3, metrics.getPromoteSteps());
+        assertEquals(2, metrics.getEvictions());
+        long[] histogram = new long[metrics.getPromoteStepsHistogram().length];
+        histogram[1] = 3;
+        assertArrayEquals(histogram, metrics.getPromoteStepsHistogram());
+        assertEquals(0, metrics.getLockWaits());
+        assertEquals(0, metrics.getQueueDepth());
+    }
+
+    @Test
+    public void testQueueDepth() throws Exception {
+        MeteredOccurrencesRating<String> rating = new MeteredOccurrencesRating<>(new QueuingOccurrencesRating<String>(10));
+        rating.registerAll(Arrays.asList("A", "B", "A"));
+        rating.register("C");
+        assertEquals(Arrays.asList("C", "B", "A"), rating.getTop(10));
+
+        OccurrencesRatingMetrics metrics = rating.getMetrics();
+        assertEquals(0, metrics.getQueueDepth());
+        assertEquals(4, metrics.getRegistrations());
+        assertEquals(1, metrics.getPromotions());
+    }
+
+    /**
+     * The read queued by the constructor and the dequeue of the last read must not race the caller.
+     */
+    @Test
+    public void testQueueDepthAfterRead() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            MeteredOccurrencesRating<String> rating = new MeteredOccurrencesRating<>(new QueuingOccurrencesRating<String>(10));
+            rating.register("A");
+            rating.getTop(1);
+            assertEquals(0, rating.getMetrics().getQueueDepth());
+        }
+    }
+
+    @Test
+    public void testThreadChurn() throws Exception {
+        final MeteredOccurrencesRating<String> rating = new MeteredOccurrencesRating<>(new ConcurrentOccurrencesRating<String>(10));
+        OccurrencesRatingMetrics metrics = rating.getMetrics();
+        for (int i = 0; i < 200; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    rating.register("A");
+                    rating.getTop(1);
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+        // recorders of terminated threads are folded on the way
+        assertTrue(metrics.recordersCount() < 200);
+        assertEquals(200, metrics.getRegistrations());
+        assertEquals(200, metrics.getReads());
+        assertEquals(0, metrics.recordersCount());
+        rating.register("A");
+        assertEquals(201, metrics.getRegistrations());
+        assertEquals(1, metrics.recordersCount());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        MeteredOccurrencesRating<String> rating = new MeteredOccurrencesRating<>(new ConcurrentOccurrencesRating<String>(10));
+        rating.register("A");
+        rating.register("A");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = rating.getMetrics().registerMBean("test");
+        try {
+            assertEquals("ws.fedoto.occurrencesrating:type=OccurrencesRating,name=\"test\"", name.toString());
+            assertEquals(2L, server.getAttribute(name, "Registrations"));
+            assertEquals(1L, server.getAttribute(name, "Promotions"));
+            assertEquals(0L, server.getAttribute(name, "Evictions"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
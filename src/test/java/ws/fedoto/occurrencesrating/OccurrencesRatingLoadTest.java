@@ -21,6 +21,10 @@ package ws.fedoto.occurrencesrating;
 
 import org.junit.Test;
 
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -29,6 +33,7 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -45,6 +50,7 @@ import static org.junit.Assert.assertTrue;
 public abstract class OccurrencesRatingLoadTest {
     private static final Random rand = new Random();
     private static final String TERMINATOR = "TERMINATE";
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
 
     protected abstract OccurrencesRating<String> createNewRating(int capacity);
 
@@ -108,6 +114,29 @@ public abstract class OccurrencesRatingLoadTest {
         loadTest(16, 10000, 2000);
     }
 
+    /**
+     * Latency of the top against the capacity is measured by {@code TopLatencyBenchmark}.
+     */
+    @Test
+    public void testTop20_10000_1000000() throws Exception {
+        topTest(10000, 20);
+        topTest(1000000, 20);
+    }
+
+    protected void topTest(int capacity, int count) throws Exception {
+        OccurrencesRating<String> rating = createNewRating(capacity);
+        for (int i = 0; i < capacity; i++) {
+            rating.register(String.valueOf(i));
+        }
+        assertEquals(capacity, rating.size());
+        rating.register(String.valueOf(capacity - 1));
+        for (int i = 0; i < 1000; i++) {
+            List<String> top = rating.getTop(count);
+            assertEquals(count, top.size());
+            assertEquals(String.valueOf(capacity - 1), top.get(0));
+        }
+    }
+
     protected void loadTest(int threadsCount, int capacity, int keysCount) throws Exception {
         OccurrencesRating<String> rating = createNewRating(capacity);
         Set<String> keys = generateKeys(keysCount);
@@ -147,6 +176,128 @@ public abstract class OccurrencesRatingLoadTest {
         }
     }
 
+    /**
+     * Every caller is a task of its own, all of them registering at once: a virtual thread per task
+     * where the JDK has them, a platform thread per task otherwise. Reports the throughput and, with
+     * virtual threads, how many times a carrier thread was pinned by a caller. Virtual threads and
+     * JFR are looked up reflectively, so the tests still compile for Java 8.
+     */
+    protected void callersTest(int callersCount, int capacity, int keysCount) throws Exception {
+        final OccurrencesRating<String> rating = createNewRating(capacity);
+        Set<String> keys = generateKeys(keysCount);
+        final List<String> samples = generateSamples(keys);
+        Collections.shuffle(samples, rand);
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+        boolean virtual = executor != null;
+        if (!virtual) {
+            executor = Executors.newCachedThreadPool();
+        }
+        System.out.printf("testing %s with %d %s callers; capacity: %d; keys: %d; samples: %d\n", rating.getClass().getSimpleName(),
+                callersCount, virtual ? "virtual" : "platform", capacity, keysCount, samples.size());
+
+        Object recording = virtual ? startPinningRecording() : null;
+        final CountDownLatch started = new CountDownLatch(callersCount);
+        final CountDownLatch go = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < callersCount; i++) {
+            final int caller = i;
+            final int callers = callersCount;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = caller; j < samples.size(); j += callers) {
+                        rating.register(samples.get(j));
+                        count.incrementAndGet();
+                    }
+                }
+            });
+        }
+        started.await();
+        long t1 = System.nanoTime();
+        go.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+        long t2 = System.nanoTime();
+
+        System.out.printf("throughput: %.1f ops/ms\n", samples.size() / ((t2 - t1) / 1000000.0));
+        if (recording == null) {
+            System.out.println("pinned carriers: n/a, no virtual threads in this JDK");
+        } else {
+            System.out.printf("pinned carriers: %d\n", stopPinningRecording(recording));
+        }
+
+        assertEquals(samples.size(), count.get());
+        Map<String, Integer> stats = rating.getStatistics(capacity);
+        assertTrue(keys.containsAll(stats.keySet()));
+        Integer lastWeight = null;
+        for (Integer weight : stats.values()) {
+            if (lastWeight != null) {
+                assertTrue(lastWeight >= weight);
+            }
+            lastWeight = weight;
+        }
+    }
+
+    /**
+     * @return null if the JDK has no virtual threads, before 21
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() throws Exception {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // a preview API in 19 and 20
+            if (e.getCause() instanceof UnsupportedOperationException) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return a started {@code jdk.jfr.Recording} of {@code jdk.VirtualThreadPinned} events
+     */
+    private static Object startPinningRecording() throws Exception {
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        Object settings = recordingClass.getMethod("enable", String.class).invoke(recording, PINNED_EVENT);
+        settings.getClass().getMethod("withThreshold", Duration.class).invoke(settings, Duration.ZERO);
+        recordingClass.getMethod("start").invoke(recording);
+        return recording;
+    }
+
+    /**
+     * @return number of pinned events of the recording
+     */
+    private static int stopPinningRecording(Object recording) throws Exception {
+        Class<?> recordingClass = recording.getClass();
+        recordingClass.getMethod("stop").invoke(recording);
+        Path file = Files.createTempFile("pinning", ".jfr");
+        try {
+            recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+            List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+                    .getMethod("readAllEvents", Path.class).invoke(null, file);
+            int pinned = 0;
+            for (Object event : events) {
+                Object type = event.getClass().getMethod("getEventType").invoke(event);
+                if (PINNED_EVENT.equals(type.getClass().getMethod("getName").invoke(type))) {
+                    pinned++;
+                }
+            }
+            return pinned;
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            Files.delete(file);
+        }
+    }
+
     private List<String> generateSamples(Set<String> keys) {
         List<String> samples = new ArrayList<>(keys.size() * 100);
         for (String key : keys) {
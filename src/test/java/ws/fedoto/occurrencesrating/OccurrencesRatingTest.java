@@ -33,7 +33,7 @@ import static org.junit.Assert.assertEquals;
  *
  */
 public abstract class OccurrencesRatingTest {
-    private static final int HAPPY_CAPACITY = 7;
+    protected static final int HAPPY_CAPACITY = 7;
     protected OccurrencesRating<String> instance;
 
     @Test
@@ -109,6 +109,41 @@ public abstract class OccurrencesRatingTest {
         checkWeights(e("C", 5), e("D", 5), e("G", 5), e("Z", 4), e("B", 4), e("E", 4), e("F", 4));
     }
 
+    @Test
+    public void testRegisterAll() throws Exception {
+        instance = createNewRating(HAPPY_CAPACITY);
+        registerAndCheck("A", "A");
+        registerAndCheck("B", "B", "A");
+        registerAndCheck("C", "C", "B", "A");
+        instance.registerAll(Arrays.asList("C", "B", "C", "A", "B", "C"));
+        check("C", "B", "A");
+        checkWeights(e("C", 4), e("B", 3), e("A", 2));
+        instance.registerAll(new String[]{"X", "A", "A", "A", "X"}, 1, 3);
+        check("A", "C", "B");
+        checkWeights(e("A", 5), e("C", 4), e("B", 3));
+    }
+
+    @Test
+    public void testRegisterWithDelta() throws Exception {
+        instance = createNewRating(HAPPY_CAPACITY);
+        registerAndCheck("A", "A");
+        instance.register("B", 3);
+        check("B", "A");
+        checkWeights(e("B", 3), e("A", 1));
+        instance.register("A", 2);
+        check("A", "B");
+        checkWeights(e("A", 3), e("B", 3));
+        instance.register("B", 5);
+        check("B", "A");
+        checkWeights(e("B", 8), e("A", 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterWithZeroDelta() throws Exception {
+        instance = createNewRating(HAPPY_CAPACITY);
+        instance.register("A", 0);
+    }
+
     protected void checkWeights(Entry... expectedEntries) throws Exception {
         Map<String, Integer> sample = instance.getStatistics(HAPPY_CAPACITY);
         assertEquals(expectedEntries.length, sample.size());
@@ -121,7 +156,7 @@ public abstract class OccurrencesRatingTest {
         }
     }
 
-    private Entry e(String key, int weight) {
+    protected Entry e(String key, int weight) {
         return new Entry(key, weight);
     }
 
@@ -139,7 +174,7 @@ public abstract class OccurrencesRatingTest {
 
     protected abstract OccurrencesRating<String> createNewRating(int capacity);
 
-    private static class Entry {
+    protected static class Entry {
         String key;
         Integer weight;
 
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class OccurrencesSummaryTest {
+
+    @Test
+    public void testExactMerge() throws Exception {
+        OccurrencesSummary<String> a = summarize(10, "A", "A", "B", "C");
+        OccurrencesSummary<String> b = summarize(10, "B", "B", "C", "D");
+        OccurrencesSummary<String> c = summarize(10, "A", "D", "D");
+        OccurrencesSummary<String> merged = a.merge(b).merge(c);
+        assertEquals(0, merged.getBound());
+        assertEquals(11, merged.getTotal());
+        assertEquals(map("A", 3, "B", 3, "D", 3, "C", 2), merged.getStatistics(10));
+        assertEquals(merged.getStatistics(10), a.merge(b.merge(c)).getStatistics(10));
+        assertEquals(merged.getStatistics(10), c.merge(a).merge(b).getStatistics(10));
+        assertEquals(2, merged.getTop(2).size());
+    }
+
+    @Test
+    public void testBoundedMerge() throws Exception {
+        int capacity = 30;
+        Random random = new Random(1);
+        Map<String, Integer> exact = new HashMap<>();
+        List<OccurrencesSummary<String>> summaries = new ArrayList<>();
+        for (int node = 0; node < 8; node++) {
+            SpaceSavingOccurrencesRating<String> rating = new SpaceSavingOccurrencesRating<>(capacity);
+            for (int i = 0; i < 20000; i++) {
+                // every node has its own favourites beside the common ones
+                String key = Integer.toString((int) Math.pow(500, random.nextDouble()) + (random.nextBoolean() ? node * 1000 : 0));
+                rating.register(key);
+                Integer count = exact.get(key);
+                exact.put(key, count == null ? 1 : count + 1);
+            }
+            summaries.add(rating.summarize());
+        }
+        OccurrencesSummary<String> sequential = summaries.get(0);
+        for (int i = 1; i < summaries.size(); i++) {
+            sequential = sequential.merge(summaries.get(i));
+        }
+        List<OccurrencesSummary<String>> level = summaries;
+        while (level.size() > 1) {
+            List<OccurrencesSummary<String>> next = new ArrayList<>();
+            for (int i = 0; i < level.size(); i += 2) {
+                next.add(level.get(i).merge(level.get(i + 1)));
+            }
+            level = next;
+        }
+        checkBounds(sequential, exact);
+        checkBounds(level.get(0), exact);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        OccurrencesSummary<String> summary = summarize(2, "A", "B", "B", "C");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(summary);
+        }
+        @SuppressWarnings("unchecked")
+        OccurrencesSummary<String> copy = (OccurrencesSummary<String>) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(summary.getEstimates(10), copy.getEstimates(10));
+        assertEquals(summary.getBound(), copy.getBound());
+        assertEquals(summary.getTotal(), copy.getTotal());
+    }
+
+    private static void checkBounds(OccurrencesSummary<String> summary, Map<String, Integer> exact) {
+        assertEquals(160000, summary.getTotal());
+        Map<String, SpaceSavingOccurrencesRating.Estimate> estimates = summary.getEstimates(summary.size());
+        for (Map.Entry<String, SpaceSavingOccurrencesRating.Estimate> e : estimates.entrySet()) {
+            int count = exact.get(e.getKey());
+            assertTrue(e.toString(), e.getValue().getGuaranteed() <= count);
+            assertTrue(e.toString(), e.getValue().getWeight() >= count);
+            assertTrue(e.toString(), e.getValue().getError() <= summary.getBound());
+        }
+        for (Map.Entry<String, Integer> e : exact.entrySet()) {
+            if (e.getValue() > summary.getBound()) {
+                assertTrue(e.toString(), estimates.containsKey(e.getKey()));
+            }
+        }
+    }
+
+    private static OccurrencesSummary<String> summarize(int capacity, String... keys) {
+        SpaceSavingOccurrencesRating<String> rating = new SpaceSavingOccurrencesRating<>(capacity);
+        for (String key : keys) {
+            rating.register(key);
+        }
+        return rating.summarize();
+    }
+
+    private static Map<String, Integer> map(Object... entries) {
+        Map<String, Integer> result = new HashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            result.put((String) entries[i], (Integer) entries[i + 1]);
+        }
+        return result;
+    }
+}
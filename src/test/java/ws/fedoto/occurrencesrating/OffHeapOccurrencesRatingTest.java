@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ */
+public class OffHeapOccurrencesRatingTest extends OccurrencesRatingTest {
+    @Override
+    protected OccurrencesRating<String> createNewRating(int capacity) {
+        return new OffHeapOccurrencesRating<>(capacity, new StringKeySerializer(16));
+    }
+
+    @Test
+    public void testSameAsSimple() throws Exception {
+        assertSameAsSimple(new OffHeapOccurrencesRating<>(100, new LongKeySerializer()));
+    }
+
+    @Test
+    public void testManyBuffers() throws Exception {
+        // 64 bytes per buffer: 3 nodes, 8 keys and 16 index slots in each one
+        assertSameAsSimple(new OffHeapOccurrencesRating<>(100, new LongKeySerializer(), 64));
+    }
+
+    private void assertSameAsSimple(OccurrencesRating<Long> actual) {
+        Random rand = new Random(1);
+        OccurrencesRating<Long> expected = new SimpleOccurrencesRating<>(100);
+        for (int i = 0; i < 100000; i++) {
+            long key = (long) (rand.nextGaussian() * 100) * 0x100000000L;
+            int delta = 1 + rand.nextInt(3);
+            expected.register(key, delta);
+            actual.register(key, delta);
+        }
+        assertEquals(expected.size(), actual.size());
+        assertEquals(new ArrayList<>(expected.getStatistics(100).entrySet()),
+                new ArrayList<>(actual.getStatistics(100).entrySet()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLongKey() throws Exception {
+        instance = createNewRating(HAPPY_CAPACITY);
+        instance.register("12345678901234567");
+    }
+}
@@ -19,6 +19,20 @@
 
 package ws.fedoto.occurrencesrating;
 
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
 /**
  *
  */
@@ -27,4 +41,66 @@ public class QueuingOccurrencesRatingTest extends OccurrencesRatingTest {
     protected OccurrencesRating<String> createNewRating(int capacity) {
         return new QueuingOccurrencesRating<>(capacity);
     }
+
+    @Test
+    public void testAsyncReads() throws Exception {
+        QueuingOccurrencesRating<String> rating = new QueuingOccurrencesRating<>(HAPPY_CAPACITY);
+        rating.register("B");
+        rating.register("A", 3);
+        assertEquals(Arrays.asList("A", "B"), rating.getTopAsync(10).get());
+        assertEquals(Collections.singletonList("A"), rating.getTopAsync(1).get());
+        Map<String, Integer> statistics = rating.getStatisticsAsync(10).get();
+        assertEquals(Arrays.asList("A", "B"), Arrays.asList(statistics.keySet().toArray()));
+        assertEquals(Arrays.asList(3, 1), Arrays.asList(statistics.values().toArray()));
+        assertEquals(2, (int) rating.sizeAsync().get());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        QueuingOccurrencesRating<String> rating = new QueuingOccurrencesRating<>(HAPPY_CAPACITY);
+        rating.register("A", 2);
+        CompletableFuture<Integer> size = rating.sizeAsync();
+        rating.close();
+        assertEquals(1, (int) size.get());
+        try {
+            rating.register("B");
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        rating.close();
+    }
+
+    @Test
+    public void testPendingReadsSeePrecedingWrites() throws Exception {
+        QueuingOccurrencesRating<Object> rating = new QueuingOccurrencesRating<>(HAPPY_CAPACITY);
+        rating.register("A", 2);
+        final CountDownLatch latch = new CountDownLatch(1);
+        // blocks the queue while the rating looks the key up
+        Object blocking = new Object() {
+            @Override
+            public int hashCode() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return super.hashCode();
+            }
+        };
+        rating.register(blocking);
+        CompletableFuture<List<Object>> top1 = rating.getTopAsync(1);
+        CompletableFuture<Integer> size = rating.sizeAsync();
+        CompletableFuture<Map<Object, Integer>> statistics = rating.getStatisticsAsync(10);
+        rating.register("B", 5);
+        CompletableFuture<List<Object>> top2 = rating.getTopAsync(1);
+        assertFalse(top1.isDone());
+        latch.countDown();
+
+        assertEquals(Collections.singletonList(blocking), top1.get());
+        assertEquals(2, (int) size.get());
+        assertEquals(2, statistics.get().size());
+        assertEquals(Collections.<Object>singletonList("B"), top2.get());
+        assertEquals(3, rating.size());
+    }
 }
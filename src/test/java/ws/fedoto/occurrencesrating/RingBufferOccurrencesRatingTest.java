@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class RingBufferOccurrencesRatingTest extends OccurrencesRatingTest {
+    @Override
+    protected OccurrencesRating<String> createNewRating(int capacity) {
+        return new RingBufferOccurrencesRating<>(capacity);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (instance != null) {
+            ((RingBufferOccurrencesRating<String>) instance).close();
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        for (RingBufferOccurrencesRating.WaitStrategy waitStrategy : RingBufferOccurrencesRating.WaitStrategy.values()) {
+            RingBufferOccurrencesRating<String> rating = new RingBufferOccurrencesRating<>(HAPPY_CAPACITY, 4, waitStrategy);
+            for (int i = 0; i < 10; i++) {
+                rating.register("A");
+            }
+            rating.close();
+            assertFalse(rating.consumer.isAlive());
+            assertEquals(Collections.singletonMap("A", 10), rating.getStatistics(HAPPY_CAPACITY));
+            try {
+                rating.register("C");
+                fail();
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            assertEquals(Collections.singletonMap("A", 10), rating.getStatistics(HAPPY_CAPACITY));
+            assertEquals(1, rating.size());
+            rating.close();
+        }
+    }
+
+    @Test
+    public void testRegisterRacingClose() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            final RingBufferOccurrencesRating<String> rating = new RingBufferOccurrencesRating<>(HAPPY_CAPACITY, 4,
+                    RingBufferOccurrencesRating.WaitStrategy.YIELD);
+            final AtomicInteger registered = new AtomicInteger();
+            Thread[] producers = new Thread[4];
+            for (int j = 0; j < producers.length; j++) {
+                producers[j] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            while (true) {
+                                rating.register("A");
+                                registered.incrementAndGet();
+                            }
+                        } catch (IllegalStateException e) {
+                            // closed
+                        }
+                    }
+                });
+                producers[j].start();
+            }
+            Thread.sleep(5);
+            rating.close();
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            assertEquals(Collections.singletonMap("A", registered.get()), rating.getStatistics(HAPPY_CAPACITY));
+        }
+    }
+
+    @Test
+    public void testFailedRegistrationIsSkipped() throws Exception {
+        RingBufferOccurrencesRating<Object> rating = new RingBufferOccurrencesRating<>(HAPPY_CAPACITY);
+        RuntimeException failure = new RuntimeException("hashCode");
+        rating.register("A");
+        rating.register(new Object() {
+            @Override
+            public int hashCode() {
+                throw failure;
+            }
+        });
+        rating.register("B");
+        rating.register("B");
+        assertEquals(Arrays.<Object>asList("B", "A"), rating.getTop(HAPPY_CAPACITY));
+        assertEquals(1, rating.getFailureCount());
+        assertEquals(failure, rating.getLastFailure());
+        assertTrue(rating.consumer.isAlive());
+        rating.close();
+    }
+}
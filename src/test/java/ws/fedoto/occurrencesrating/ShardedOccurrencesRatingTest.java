@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ */
+public class ShardedOccurrencesRatingTest extends OccurrencesRatingTest {
+    @Override
+    protected OccurrencesRating<String> createNewRating(int capacity) {
+        return new ShardedOccurrencesRating<>(capacity, 1);
+    }
+
+    @Test
+    public void testMergeOfShards() throws Exception {
+        OccurrencesRating<String> rating = new ShardedOccurrencesRating<>(100, 4);
+        for (int i = 1; i <= 50; i++) {
+            rating.register("key" + i);
+        }
+        for (int i = 2; i <= 50; i++) {
+            rating.register("key" + i, i - 1);
+        }
+        assertEquals(50, rating.size());
+        Map<String, Integer> statistics = rating.getStatistics(10);
+        List<String> expected = new ArrayList<>();
+        int weight = 50;
+        for (Map.Entry<String, Integer> e : statistics.entrySet()) {
+            assertEquals("key" + weight, e.getKey());
+            assertEquals(weight, (int) e.getValue());
+            expected.add(e.getKey());
+            weight--;
+        }
+        assertEquals(10, statistics.size());
+        assertEquals(expected, rating.getTop(10));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class SimpleOccurrencesRatingAdmissionTest {
+    private static final List<String> HOT_KEYS = Arrays.asList("A", "B", "C", "D");
+
+    @Test
+    public void testScanResistance() throws Exception {
+        SimpleOccurrencesRating<String> instance = new SimpleOccurrencesRating<>(4, new AdmissionFilter(8));
+        registerHotKeysAndScan(instance);
+        assertEquals(new HashSet<>(HOT_KEYS), new HashSet<>(instance.getTop(4)));
+    }
+
+    @Test
+    public void testScanWithoutFilter() throws Exception {
+        SimpleOccurrencesRating<String> instance = new SimpleOccurrencesRating<>(4);
+        registerHotKeysAndScan(instance);
+        assertFalse(instance.getTop(4).containsAll(HOT_KEYS));
+    }
+
+    @Test
+    public void testFrequentNewcomerIsAdmitted() throws Exception {
+        SimpleOccurrencesRating<String> instance = new SimpleOccurrencesRating<>(2, new AdmissionFilter(8));
+        instance.register("A", 3);
+        instance.register("B");
+        // the bottom key A occurred 3 times
+        assertEquals(Arrays.asList("B", "A"), instance.getTop(10));
+        for (int i = 0; i < 3; i++) {
+            instance.register("C");
+            assertFalse(instance.getTop(10).contains("C"));
+        }
+        instance.register("C");
+        assertEquals(Arrays.asList("C", "B"), instance.getTop(10));
+        assertEquals(2, instance.size());
+    }
+
+    private static void registerHotKeysAndScan(SimpleOccurrencesRating<String> instance) {
+        for (int i = 0; i < 10; i++) {
+            for (String key : HOT_KEYS) {
+                instance.register(key);
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            instance.register("scan" + i);
+            assertTrue(instance.size() <= 4);
+        }
+    }
+}
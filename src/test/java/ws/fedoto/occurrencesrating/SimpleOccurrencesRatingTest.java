@@ -19,6 +19,8 @@
 
 package ws.fedoto.occurrencesrating;
 
+import org.junit.Test;
+
 /**
  *
  */
@@ -27,4 +29,27 @@ public class SimpleOccurrencesRatingTest extends OccurrencesRatingTest {
     protected OccurrencesRating<String> createNewRating(int capacity) {
         return new SimpleOccurrencesRating<>(capacity);
     }
+
+    /**
+     * Every new key after the first eviction reuses the node evicted last, with the weight and the
+     * neighbours of its previous key.
+     */
+    @Test
+    public void testRecycledNodeIsReset() throws Exception {
+        instance = createNewRating(2);
+        instance.register("A");
+        instance.register("B");
+        instance.register("B", 5);
+        checkWeights(e("B", 6), e("A", 1));
+        instance.register("C");
+        checkWeights(e("B", 6), e("C", 1));
+        instance.register("C", 10);
+        checkWeights(e("C", 11), e("B", 6));
+        instance.register("D");
+        checkWeights(e("D", 11), e("C", 11));
+        instance.register("E", 2);
+        checkWeights(e("E", 12), e("D", 11));
+        instance.register("A");
+        checkWeights(e("E", 12), e("A", 11));
+    }
 }
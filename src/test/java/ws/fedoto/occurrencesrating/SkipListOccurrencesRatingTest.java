@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ */
+public class SkipListOccurrencesRatingTest extends OccurrencesRatingTest {
+    @Override
+    protected OccurrencesRating<String> createNewRating(int capacity) {
+        return new SkipListOccurrencesRating<>(capacity);
+    }
+
+    /**
+     * A key is promoted after its entry is indexed but before its first position is added. The
+     * promotion must not wait for the adding thread, here the same one.
+     */
+    @Test(timeout = 60000)
+    public void testPromotionOfKeyBeingAdded() throws Exception {
+        SkipListOccurrencesRating<String> rating = new SkipListOccurrencesRating<String>(HAPPY_CAPACITY) {
+            private boolean promoted;
+
+            @Override
+            void indexed(String key) {
+                if (!promoted) {
+                    promoted = true;
+                    register(key, 2);
+                }
+            }
+        };
+        rating.register("A");
+        assertEquals(1, rating.size());
+        assertEquals(Collections.singletonMap("A", 3), rating.getStatistics(HAPPY_CAPACITY));
+    }
+
+    /**
+     * A writer that looked up the entry of X is overtaken by a writer that evicts X. It must register
+     * X anew, evicting the other key.
+     */
+    @Test
+    public void testPromotionOfEvictedKey() throws Exception {
+        SkipListOccurrencesRating<String> rating = new SkipListOccurrencesRating<String>(1) {
+            private boolean overtaken;
+
+            @Override
+            void lookedUp(String key) {
+                if (!overtaken) {
+                    overtaken = true;
+                    register("Y");
+                }
+            }
+        };
+        rating.register("X");
+        rating.register("X", 5);
+        assertEquals(1, rating.size());
+        assertEquals(Collections.singletonMap("X", 5), rating.getStatistics(1));
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentEvictionAndRegistration() throws Exception {
+        final SkipListOccurrencesRating<String> rating = new SkipListOccurrencesRating<>(2);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final Random random = new Random(t);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 200000; i++) {
+                        rating.register("K" + random.nextInt(5));
+                    }
+                }
+            });
+            // a livelocked writer must not keep the test JVM alive
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(2, rating.size());
+        assertEquals(2, rating.getStatistics(HAPPY_CAPACITY).size());
+    }
+}
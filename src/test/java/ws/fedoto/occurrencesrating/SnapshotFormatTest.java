@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class SnapshotFormatTest {
+    private static final StringKeySerializer SERIALIZER = new StringKeySerializer(16);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSimple() throws Exception {
+        SimpleOccurrencesRating<String> original = new SimpleOccurrencesRating<>(50);
+        SimpleOccurrencesRating<String> restored = new SimpleOccurrencesRating<>(50);
+        Random random = new Random(1);
+        register(original, random);
+        Path path = folder.newFile().toPath();
+        original.save(path, SERIALIZER);
+        restored.load(path, SERIALIZER);
+        assertEquals(new ArrayList<>(original.getStatistics(50).entrySet()), new ArrayList<>(restored.getStatistics(50).entrySet()));
+        // the insertion point is restored too, so both ratings evolve the same way
+        for (String key : register(original, random)) {
+            restored.register(key);
+        }
+        assertEquals(new ArrayList<>(original.getStatistics(50).entrySet()), new ArrayList<>(restored.getStatistics(50).entrySet()));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        ConcurrentOccurrencesRating<String> original = new ConcurrentOccurrencesRating<>(50);
+        ConcurrentOccurrencesRating<String> restored = new ConcurrentOccurrencesRating<>(50, 10, 0, TimeUnit.MILLISECONDS);
+        Random random = new Random(2);
+        register(original, random);
+        Path path = folder.newFile().toPath();
+        original.save(path, SERIALIZER);
+        restored.load(path, SERIALIZER);
+        assertEquals(new ArrayList<>(original.getStatistics(50).entrySet()), new ArrayList<>(restored.getStatistics(50).entrySet()));
+        assertEquals(50, restored.size());
+        for (String key : register(original, random)) {
+            restored.register(key);
+        }
+        assertEquals(new ArrayList<>(original.getStatistics(50).entrySet()), new ArrayList<>(restored.getStatistics(50).entrySet()));
+    }
+
+    @Test
+    public void testConcurrentToSimpleWithSmallerCapacity() throws Exception {
+        ConcurrentOccurrencesRating<String> original = new ConcurrentOccurrencesRating<>(50);
+        register(original, new Random(3));
+        Path path = folder.newFile().toPath();
+        original.save(path, SERIALIZER);
+        SimpleOccurrencesRating<String> restored = new SimpleOccurrencesRating<>(20);
+        restored.load(path, SERIALIZER);
+        assertEquals(20, restored.size());
+        assertEquals(new ArrayList<>(original.getStatistics(20).entrySet()), new ArrayList<>(restored.getStatistics(20).entrySet()));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        Path path = folder.newFile().toPath();
+        new SimpleOccurrencesRating<String>(10).save(path, SERIALIZER);
+        SimpleOccurrencesRating<String> restored = new SimpleOccurrencesRating<>(10);
+        restored.load(path, SERIALIZER);
+        assertEquals(0, restored.size());
+        restored.register("A");
+        assertEquals(1, restored.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLoadIntoNotEmpty() throws Exception {
+        Path path = folder.newFile().toPath();
+        new SimpleOccurrencesRating<String>(10).save(path, SERIALIZER);
+        SimpleOccurrencesRating<String> restored = new SimpleOccurrencesRating<>(10);
+        restored.register("A");
+        restored.load(path, SERIALIZER);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotSnapshot() throws Exception {
+        Path path = folder.newFile().toPath();
+        Files.write(path, new byte[100]);
+        new ConcurrentOccurrencesRating<String>(10).load(path, SERIALIZER);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception {
+        SimpleOccurrencesRating<String> original = new SimpleOccurrencesRating<>(50);
+        register(original, new Random(4));
+        Path path = folder.newFile().toPath();
+        original.save(path, SERIALIZER);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 3));
+        new SimpleOccurrencesRating<String>(50).load(path, SERIALIZER);
+    }
+
+    @Test
+    public void testFailedSaveKeepsPreviousFile() throws Exception {
+        SimpleOccurrencesRating<String> original = new SimpleOccurrencesRating<>(50);
+        register(original, new Random(5));
+        Path path = folder.newFile().toPath();
+        original.save(path, SERIALIZER);
+        byte[] saved = Files.readAllBytes(path);
+        original.register("a key longer than 16 bytes");
+        try {
+            original.save(path, SERIALIZER);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertArrayEquals(saved, Files.readAllBytes(path));
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testCorruptedInsertionPoint() throws Exception {
+        SimpleOccurrencesRating<String> original = new SimpleOccurrencesRating<>(50);
+        original.register("A");
+        original.register("B");
+        Path path = folder.newFile().toPath();
+        original.save(path, SERIALIZER);
+        byte[] bytes = Files.readAllBytes(path);
+        for (int insertionPoint : new int[]{-1, 3}) {
+            ByteBuffer.wrap(bytes).putInt(16, insertionPoint);
+            Files.write(path, bytes);
+            for (SavableOccurrencesRating<String> restored : Arrays.<SavableOccurrencesRating<String>>asList(
+                    new SimpleOccurrencesRating<String>(50), new ConcurrentOccurrencesRating<String>(50))) {
+                try {
+                    restored.load(path, SERIALIZER);
+                    fail();
+                } catch (IOException e) {
+                    assertEquals(0, restored.size());
+                }
+            }
+        }
+    }
+
+    private static List<String> register(OccurrencesRating<String> rating, Random random) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String key = "key" + (int) Math.pow(200, random.nextDouble());
+            rating.register(key);
+            keys.add(key);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class SpaceSavingOccurrencesRatingTest {
+    private SpaceSavingOccurrencesRating<String> instance;
+
+    @Test
+    public void testHappyPath() throws Exception {
+        instance = new SpaceSavingOccurrencesRating<>(3);
+        registerAndCheck("A", "A");
+        registerAndCheck("B", "B", "A");
+        registerAndCheck("A", "A", "B");
+        registerAndCheck("C", "A", "C", "B");
+        registerAndCheck("D", "D", "A", "C");
+        checkEstimates("D", 2, 1, "A", 2, 0, "C", 1, 0);
+        instance.register("E", 3);
+        check("E", "D", "A");
+        checkEstimates("E", 4, 1, "D", 2, 1, "A", 2, 0);
+        assertEquals(8, instance.getTotal());
+    }
+
+    @Test
+    public void testSketch() throws Exception {
+        instance = new SpaceSavingOccurrencesRating<>(2, new CountMinSketch(1024, 4));
+        instance.register("A", 5);
+        instance.register("B", 3);
+        registerAndCheck("C", "A", "C");
+        checkEstimates("A", 5, 0, "C", 1, 0);
+        instance.register("B", 2);
+        checkEstimates("B", 5, 3, "A", 5, 0);
+    }
+
+    @Test
+    public void testErrorBounds() throws Exception {
+        testErrorBounds(null);
+    }
+
+    @Test
+    public void testErrorBoundsWithSketch() throws Exception {
+        testErrorBounds(new CountMinSketch(256, 4));
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        instance = new SpaceSavingOccurrencesRating<>(2);
+        instance.register("A", 5);
+        instance.register("B", 2);
+        SpaceSavingOccurrencesRating<String> other = new SpaceSavingOccurrencesRating<>(2);
+        other.register("C", 4);
+        other.register("B", 3);
+        other.register("D");
+        // D took over B with error 3, so B may have occurred 3 times more in the other rating
+        instance.merge(other);
+        check("A", "B");
+        checkEstimates("A", 8, 3, "B", 5, 3);
+        assertEquals(15, instance.getTotal());
+        // C and D were dropped with weight 4
+        assertEquals(4, instance.summarize().getBound());
+        instance.register("E");
+        checkEstimates("A", 8, 3, "E", 6, 5);
+    }
+
+    @Test
+    public void testMergeOfSmallerCapacity() throws Exception {
+        instance = new SpaceSavingOccurrencesRating<>(10);
+        SpaceSavingOccurrencesRating<String> other = new SpaceSavingOccurrencesRating<>(2);
+        other.register("A", 5);
+        other.register("B", 5);
+        other.register("C");
+        // C took over A with error 5
+        instance.merge(other.summarize());
+        checkEstimates("C", 6, 5, "B", 5, 0);
+        assertEquals(5, instance.summarize().getBound());
+        // the rating is not full, but A may have occurred 5 times already
+        instance.register("A");
+        check("A", "C", "B");
+        checkEstimates("A", 6, 5, "C", 6, 5, "B", 5, 0);
+    }
+
+    private void testErrorBounds(CountMinSketch sketch) {
+        int capacity = 50;
+        instance = new SpaceSavingOccurrencesRating<>(capacity, sketch);
+        Map<String, Integer> exact = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            int key = (int) Math.pow(1000, random.nextDouble());
+            int delta = 1 + random.nextInt(3);
+            instance.register(Integer.toString(key), delta);
+            Integer count = exact.get(Integer.toString(key));
+            exact.put(Integer.toString(key), count == null ? delta : count + delta);
+        }
+        long bound = instance.getTotal() / capacity;
+        Map<String, SpaceSavingOccurrencesRating.Estimate> estimates = instance.getEstimates(capacity);
+        assertEquals(capacity, estimates.size());
+        for (Map.Entry<String, SpaceSavingOccurrencesRating.Estimate> e : estimates.entrySet()) {
+            int count = exact.get(e.getKey());
+            assertTrue(e.toString(), e.getValue().getGuaranteed() <= count);
+            assertTrue(e.toString(), e.getValue().getWeight() >= count);
+            assertTrue(e.toString(), e.getValue().getError() <= bound);
+        }
+        for (Map.Entry<String, Integer> e : exact.entrySet()) {
+            if (e.getValue() > bound) {
+                assertTrue(e.toString(), estimates.containsKey(e.getKey()));
+            }
+        }
+    }
+
+    private void registerAndCheck(String newKey, String... expectedItems) {
+        instance.register(newKey);
+        check(expectedItems);
+    }
+
+    private void check(String... expectedItems) {
+        assertEquals(Arrays.asList(expectedItems), instance.getTop(10));
+        assertEquals(expectedItems.length, instance.size());
+    }
+
+    private void checkEstimates(Object... expected) {
+        Map<String, SpaceSavingOccurrencesRating.Estimate> sample = instance.getEstimates(10);
+        Map<String, Integer> statistics = instance.getStatistics(10);
+        assertEquals(expected.length / 3, sample.size());
+        Iterator<Map.Entry<String, SpaceSavingOccurrencesRating.Estimate>> iterator = sample.entrySet().iterator();
+        for (int i = 0; i < expected.length; i += 3) {
+            Map.Entry<String, SpaceSavingOccurrencesRating.Estimate> e = iterator.next();
+            assertEquals(expected[i], e.getKey());
+            assertEquals(new SpaceSavingOccurrencesRating.Estimate((Integer) expected[i + 1], (Integer) expected[i + 2]), e.getValue());
+            assertEquals(expected[i + 1], statistics.get(e.getKey()));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ */
+public class StringKeySerializerTest {
+    private final StringKeySerializer serializer = new StringKeySerializer(16);
+
+    @Test
+    public void testSameAsGetBytes() throws Exception {
+        for (String key : new String[]{"", "key", "\u043a\u043b\u044e\u0447", "\u20ac\u0800\uffff", "\ud83d\ude00!", "a\ud83db", "\ude00", "b\ud83d"}) {
+            ByteBuffer buffer = ByteBuffer.allocate(serializer.maxSize());
+            serializer.write(key, buffer);
+            byte[] expected = key.getBytes(StandardCharsets.UTF_8);
+            assertArrayEquals(key, expected, Arrays.copyOf(buffer.array(), buffer.position()));
+            buffer.flip();
+            assertEquals(new String(expected, StandardCharsets.UTF_8), serializer.read(buffer));
+        }
+    }
+
+    @Test
+    public void testTooLongKey() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        buffer.put((byte) 1);
+        try {
+            serializer.write("1234567890123456\u00e9", buffer);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, buffer.position());
+        }
+        serializer.write("12345678901234\u00e9", buffer);
+        assertEquals(17, buffer.position());
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class StripedOccurrencesRatingTest extends OccurrencesRatingTest {
+    private long now;
+
+    @Override
+    protected OccurrencesRating<String> createNewRating(int capacity) {
+        return new StripedOccurrencesRating<>(capacity, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testNoMergerWithoutStaleness() throws Exception {
+        StripedOccurrencesRating<String> rating = new StripedOccurrencesRating<>(HAPPY_CAPACITY, 0, TimeUnit.MILLISECONDS);
+        assertNull(rating.merger);
+        rating.close();
+    }
+
+    @Test
+    public void testStaleReads() throws Exception {
+        StripedOccurrencesRating<String> rating = new StripedOccurrencesRating<String>(HAPPY_CAPACITY, 1, TimeUnit.HOURS) {
+            @Override
+            long nanoTime() {
+                return now;
+            }
+        };
+        rating.register("A");
+        assertEquals(Collections.<String>emptyList(), rating.getTop(HAPPY_CAPACITY));
+        now += TimeUnit.MINUTES.toNanos(59);
+        assertEquals(0, rating.size());
+        now += TimeUnit.MINUTES.toNanos(1);
+        assertEquals(Arrays.asList("A"), rating.getTop(HAPPY_CAPACITY));
+        rating.register("B", 2);
+        rating.register("A", 2);
+        assertEquals(Collections.singletonMap("A", 1), rating.getStatistics(HAPPY_CAPACITY));
+        rating.merge();
+        assertEquals(2, rating.size());
+        assertEquals(Integer.valueOf(3), rating.getStatistics(HAPPY_CAPACITY).get("A"));
+        rating.close();
+        assertTrue(rating.merger.isShutdown());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ */
+public class TopKOccurrencesRatingTest {
+    @Test
+    public void testHappyPath() throws Exception {
+        TopKOccurrencesRating<String> rating = new TopKOccurrencesRating<>(10, 3);
+        rating.register("A");
+        check(rating, "A", 1);
+        rating.register("B");
+        check(rating, "B", 1, "A", 1);
+        rating.register("A");
+        check(rating, "A", 2, "B", 1);
+        rating.register("C", 3);
+        check(rating, "C", 3, "A", 2, "B", 1);
+        // a tie with the threshold does not enter the top
+        rating.register("D");
+        check(rating, "C", 3, "A", 2, "B", 1);
+        assertEquals(4, rating.size());
+        rating.register("D");
+        check(rating, "C", 3, "D", 2, "A", 2);
+        rating.register("D");
+        check(rating, "D", 3, "C", 3, "A", 2);
+        rating.register("B", 2);
+        check(rating, "B", 3, "D", 3, "C", 3);
+        assertEquals(Arrays.asList("B", "D"), rating.getTop(2));
+    }
+
+    @Test
+    public void testExactCountsOutsideOfTop() throws Exception {
+        TopKOccurrencesRating<String> rating = new TopKOccurrencesRating<>(10, 1);
+        rating.register("A", 10);
+        for (int i = 0; i < 9; i++) {
+            rating.register("B");
+        }
+        check(rating, "A", 10);
+        rating.register("B", 2);
+        check(rating, "B", 11);
+        rating.register("A");
+        check(rating, "B", 11);
+        rating.register("A");
+        check(rating, "A", 12);
+    }
+
+    @Test
+    public void testEvictionKeepsTop() throws Exception {
+        TopKOccurrencesRating<String> rating = new TopKOccurrencesRating<>(20, 5);
+        for (int i = 0; i < 5; i++) {
+            rating.register("top" + i, 100 + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            rating.register("tail" + i);
+        }
+        assertEquals(20, rating.size());
+        assertEquals(Arrays.asList("top4", "top3", "top2", "top1", "top0"), rating.getTop(10));
+    }
+
+    @Test
+    public void testTopMatchesExactCounts() throws Exception {
+        Random rand = new Random(42);
+        int[] counts = new int[1000];
+        TopKOccurrencesRating<Integer> rating = new TopKOccurrencesRating<>(counts.length, 10);
+        for (int i = 0; i < 100000; i++) {
+            int key = (int) (counts.length * Math.pow(rand.nextDouble(), 3));
+            counts[key]++;
+            rating.register(key);
+        }
+        Map<Integer, Integer> statistics = rating.getStatistics(10);
+        assertEquals(10, statistics.size());
+        Integer lastWeight = null;
+        for (Map.Entry<Integer, Integer> e : statistics.entrySet()) {
+            assertEquals(counts[e.getKey()], (int) e.getValue());
+            if (lastWeight != null) {
+                assertTrue(lastWeight >= e.getValue());
+            }
+            lastWeight = e.getValue();
+        }
+        int[] sorted = counts.clone();
+        Arrays.sort(sorted);
+        assertEquals(sorted[sorted.length - 10], (int) lastWeight);
+    }
+
+    @Test
+    public void testPartialTopIsPrefixOfFullTop() throws Exception {
+        Random rand = new Random(7);
+        TopKOccurrencesRating<Integer> rating = new TopKOccurrencesRating<>(1000, 100);
+        for (int i = 0; i < 100000; i++) {
+            rating.register((int) (1000 * Math.pow(rand.nextDouble(), 2)), 1 + rand.nextInt(3));
+        }
+        List<Integer> top = rating.getTop(100);
+        assertEquals(100, top.size());
+        for (int k = 0; k <= 100; k++) {
+            assertEquals(top.subList(0, k), rating.getTop(k));
+            assertEquals(top.subList(0, k), new ArrayList<>(rating.getStatistics(k).keySet()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTopSizeNotLessThanCapacity() throws Exception {
+        new TopKOccurrencesRating<String>(10, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterWithZeroDelta() throws Exception {
+        new TopKOccurrencesRating<String>(10, 3).register("A", 0);
+    }
+
+    private void check(TopKOccurrencesRating<String> rating, Object... expected) {
+        Map<String, Integer> statistics = rating.getStatistics(10);
+        assertEquals(expected.length / 2, statistics.size());
+        Iterator<Map.Entry<String, Integer>> iterator = statistics.entrySet().iterator();
+        for (int i = 0; i < expected.length; i += 2) {
+            Map.Entry<String, Integer> e = iterator.next();
+            assertEquals(expected[i], e.getKey());
+            assertEquals(expected[i + 1], e.getValue());
+        }
+        List<String> top = rating.getTop(10);
+        assertEquals(new ArrayList<>(statistics.keySet()), top);
+    }
+}
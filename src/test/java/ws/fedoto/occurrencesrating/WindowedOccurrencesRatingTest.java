@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2013 Dimitrijs Fedotovs.
+ *
+ * This file is part of OccurrencesRating library.
+ *
+ * OccurrencesRating library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OccurrencesRating library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OccurrencesRating library.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ws.fedoto.occurrencesrating;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ */
+public class WindowedOccurrencesRatingTest {
+    private long now;
+    private OccurrencesRating<String> instance;
+
+    @Before
+    public void setUp() throws Exception {
+        instance = new WindowedOccurrencesRating<String>(4, 4, TimeUnit.SECONDS, 4) {
+            @Override
+            long nanoTime() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void testHappyPath() throws Exception {
+        registerAndCheck("A", "A");
+        registerAndCheck("B", "B", "A");
+        registerAndCheck("A", "A", "B");
+        registerAndCheck("C", "A", "C", "B");
+        registerAndCheck("C", "C", "A", "B");
+        checkWeights("C", 2, "A", 2, "B", 1);
+        instance.register("D", 3);
+        check("D", "C", "A", "B");
+        registerAndCheck("E", "D", "C", "A", "E");
+        checkWeights("D", 3, "C", 2, "A", 2, "E", 1);
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        instance.register("A", 3);
+        tick();
+        instance.register("B", 2);
+        instance.register("A");
+        tick();
+        instance.register("C");
+        checkWeights("A", 4, "B", 2, "C", 1);
+        tick();
+        tick();
+        checkWeights("B", 2, "A", 1, "C", 1);
+        tick();
+        checkWeights("C", 1);
+        now += TimeUnit.SECONDS.toNanos(100);
+        check();
+        registerAndCheck("A", "A");
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        instance.register("A", 2);
+        instance.register("B", 3);
+        instance.register("C", 4);
+        instance.register("D", 5);
+        tick();
+        registerAndCheck("E", "D", "C", "B", "E");
+        tick();
+        tick();
+        tick();
+        checkWeights("E", 1);
+    }
+
+    private void tick() {
+        now += TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private void registerAndCheck(String newKey, String... expectedItems) {
+        instance.register(newKey);
+        check(expectedItems);
+    }
+
+    private void check(String... expectedItems) {
+        assertEquals(Arrays.asList(expectedItems), instance.getTop(10));
+        assertEquals(expectedItems.length, instance.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() throws Exception {
+        new WindowedOccurrencesRating<String>(0, 4, TimeUnit.SECONDS, 4);
+    }
+
+    private void checkWeights(Object... expected) {
+        Map<String, Integer> sample = instance.getStatistics(10);
+        assertEquals(expected.length / 2, sample.size());
+        Iterator<Map.Entry<String, Integer>> iterator = sample.entrySet().iterator();
+        for (int i = 0; i < expected.length; i += 2) {
+            Map.Entry<String, Integer> e = iterator.next();
+            assertEquals(expected[i], e.getKey());
+            assertEquals(expected[i + 1], e.getValue());
+        }
+    }
+}